@@ -0,0 +1,289 @@
+package com.imagibox.concurrent;
+
+import com.imagibox.config.BulkheadProperties;
+import com.imagibox.exception.DeadlineExceededException;
+import com.imagibox.exception.ProviderBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Concurrency limit for one external provider whose size adapts to how the
+ * provider behaves (AIMD): each fast successful call while the bulkhead is at
+ * least half used grows the limit by 1/limit, i.e. about one per full window;
+ * a failure or a call slower than the latency target multiplies it by the
+ * backoff ratio. Calls that were interrupted or cancelled, such as the losing
+ * attempt of a hedge, neither grow nor shrink it. Callers wait up to max-wait
+ * for a permit, then get a ProviderBusyException. Blocking calls park their
+ * thread while they wait;
+ * streams poll for a permit on timers instead, since they may be (re)subscribed
+ * on a shared reactor thread.
+ *
+ * Calls also respect the deadline in GenerationContext: nobody waits for a
+ * permit past it, and a call or stream still running at the deadline is
+ * cancelled with a DeadlineExceededException.
+ *
+ * Metrics, tagged with the bulkhead name: imagibox.bulkhead.limit,
+ * imagibox.bulkhead.in-flight, imagibox.bulkhead.rejections and
+ * imagibox.bulkhead.latency.
+ */
+@Slf4j
+public class AdaptiveBulkhead {
+
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    private static final Duration MIN_POLL = Duration.ofMillis(10);
+    private static final Duration MAX_POLL = Duration.ofMillis(200);
+
+    private final String name;
+    private final BulkheadProperties.Limits limits;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+    private double limit;
+    private int inFlight;
+
+    private final Counter rejections;
+    private final Timer latency;
+
+    public AdaptiveBulkhead(String name, BulkheadProperties.Limits limits, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.limits = limits;
+        this.limit = limits.getInitialLimit();
+
+        Gauge.builder("imagibox.bulkhead.limit", this, AdaptiveBulkhead::getLimit)
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("imagibox.bulkhead.in-flight", this, AdaptiveBulkhead::getInFlight)
+                .tag("name", name)
+                .register(meterRegistry);
+        this.rejections = Counter.builder("imagibox.bulkhead.rejections")
+                .tag("name", name)
+                .register(meterRegistry);
+        this.latency = Timer.builder("imagibox.bulkhead.latency")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    public <T, E extends Exception> T execute(Call<T, E> call) throws E {
+        acquire();
+        long start = System.nanoTime();
+        try {
+            T result = Deadlines.callWithin(name, call);
+            if (!Thread.currentThread().isInterrupted()) {
+                onSuccess(System.nanoTime() - start);
+            }
+            return result;
+        } catch (DeadlineExceededException e) {
+            // The request ran out of budget, which says nothing certain about the provider
+            throw e;
+        } catch (Exception e) {
+            // Nor does a call its caller gave up on, such as the losing attempt of a hedge
+            if (!abandoned(e)) {
+                onFailure();
+            }
+            throw e;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Holds a permit for the lifetime of a streamed response. Streams only shrink
+     * the limit on failure; their duration says little about provider health.
+     */
+    public <T> Flux<T> stream(Supplier<Flux<T>> stream) {
+        // Subscription happens on another thread, so read the deadline while still on the caller's
+        Instant deadline = GenerationContext.deadline();
+        Flux<T> bounded = Flux.usingWhen(permit(deadline),
+                permit -> stream.get().doOnError(e -> onFailure()),
+                permit -> Mono.fromRunnable(this::release),
+                (permit, error) -> Mono.fromRunnable(this::release),
+                permit -> Mono.fromRunnable(this::release));
+        if (deadline == null) {
+            return bounded;
+        }
+        // Every element re-arms the timer with what is left of the whole budget, not a fresh one
+        return bounded
+                .timeout(untilDeadline(deadline), item -> untilDeadline(deadline))
+                .onErrorMap(TimeoutException.class,
+                        e -> new DeadlineExceededException("Deadline passed during " + name + " stream"));
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Emits once a permit is taken, retrying on a timer rather than blocking, so it is
+     * safe on any thread. Only the deadline passed in is used; the subscribing thread
+     * has no GenerationContext.
+     */
+    private Mono<Boolean> permit(Instant deadline) {
+        return Mono.defer(() -> {
+            Instant now = Instant.now();
+            if (deadline != null && !now.isBefore(deadline)) {
+                return Mono.error(new DeadlineExceededException("Deadline passed before " + name + " stream"));
+            }
+            Instant waitUntil = now.plus(limits.getMaxWait());
+            boolean deadlineFirst = deadline != null && deadline.isBefore(waitUntil);
+            Instant giveUpAt = deadlineFirst ? deadline : waitUntil;
+
+            return Mono.fromCallable(() -> tryAcquire() ? Boolean.TRUE : null)
+                    .repeatWhenEmpty(attempts -> attempts.concatMap(attempt -> {
+                        Duration left = Duration.between(Instant.now(), giveUpAt);
+                        if (left.isNegative() || left.isZero()) {
+                            return Mono.error(deadlineFirst
+                                    ? new DeadlineExceededException("Deadline passed waiting for bulkhead " + name)
+                                    : rejected());
+                        }
+                        Duration poll = MIN_POLL.multipliedBy(1L << Math.min(attempt, 5));
+                        poll = poll.compareTo(MAX_POLL) > 0 ? MAX_POLL : poll;
+                        return Mono.delay(poll.compareTo(left) > 0 ? left : poll).map(tick -> attempt);
+                    }));
+        });
+    }
+
+    private boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) {
+                return false;
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ProviderBusyException rejected() {
+        rejections.increment();
+        log.warn("Bulkhead {} is full ({} in flight)", name, getInFlight());
+        return new ProviderBusyException("Bulkhead " + name + " is full");
+    }
+
+    private void acquire() {
+        Deadlines.check(name);
+        Duration untilDeadline = Deadlines.remaining();
+        boolean deadlineFirst = untilDeadline != null && untilDeadline.compareTo(limits.getMaxWait()) < 0;
+
+        lock.lock();
+        try {
+            long remainingNanos = deadlineFirst ? untilDeadline.toNanos() : limits.getMaxWait().toNanos();
+            while (inFlight >= (int) limit) {
+                if (remainingNanos <= 0 && deadlineFirst) {
+                    throw new DeadlineExceededException("Deadline passed waiting for bulkhead " + name);
+                }
+                if (remainingNanos <= 0) {
+                    throw rejected();
+                }
+                remainingNanos = permitReleased.awaitNanos(remainingNanos);
+            }
+            inFlight++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProviderBusyException("Interrupted while waiting for bulkhead " + name);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onSuccess(long latencyNanos) {
+        latency.record(latencyNanos, TimeUnit.NANOSECONDS);
+        if (latencyNanos > limits.getLatencyTarget().toNanos()) {
+            decrease();
+            return;
+        }
+
+        lock.lock();
+        try {
+            // Only grow while the limit is actually being used
+            if (inFlight * 2 >= limit) {
+                limit = Math.min(limits.getMaxLimit(), limit + 1.0 / limit);
+                permitReleased.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onFailure() {
+        decrease();
+    }
+
+    private void decrease() {
+        lock.lock();
+        try {
+            limit = Math.max(limits.getMinLimit(), limit * limits.getBackoffRatio());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether the call failed because it was interrupted or cancelled rather than
+     * because of the provider.
+     */
+    private static boolean abandoned(Throwable error) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        for (Throwable cause = error; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof InterruptedException
+                    || cause instanceof InterruptedIOException
+                    || cause instanceof ClosedByInterruptException
+                    || cause instanceof CancellationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Mono<Long> untilDeadline(Instant deadline) {
+        Duration remaining = Duration.between(Instant.now(), deadline);
+        return Mono.delay(remaining.isNegative() ? Duration.ZERO : remaining);
+    }
+}
@@ -0,0 +1,56 @@
+package com.imagibox.concurrent;
+
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs each task on its own virtual thread, with semaphores standing in for the
+ * pool and queue sizes of a ThreadPoolTaskExecutor: at most {@code concurrency}
+ * tasks run at once, up to {@code queueCapacity} more wait (parked cheaply on
+ * their virtual threads), and anything beyond that is rejected.
+ *
+ * Requires a Java 21 runtime; construction fails on older JVMs.
+ */
+public class BoundedVirtualThreadExecutor implements TaskExecutor {
+
+    private final TaskExecutor virtualThreads;
+    private final Semaphore admitted;
+    private final Semaphore running;
+
+    public BoundedVirtualThreadExecutor(String threadNamePrefix, int concurrency, int queueCapacity) {
+        this.virtualThreads = new VirtualThreadTaskExecutor(threadNamePrefix);
+        this.admitted = new Semaphore(concurrency + queueCapacity);
+        this.running = new Semaphore(concurrency);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!admitted.tryAcquire()) {
+            throw new TaskRejectedException("Executor is at capacity, rejecting " + task);
+        }
+
+        try {
+            Runnable bound = GenerationContext.wrap(task);
+            virtualThreads.execute(() -> {
+                try {
+                    running.acquire();
+                    try {
+                        bound.run();
+                    } finally {
+                        running.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    admitted.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            admitted.release();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.imagibox.concurrent;
+
+import com.imagibox.config.RetryProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Retries transient provider failures with exponential backoff and full jitter.
+ * Retries are paid from a node-wide TokenBudget, so when the provider is down
+ * for everyone they dry up instead of multiplying the load. A retry is also
+ * skipped when its backoff would end past the request's deadline.
+ *
+ * Metrics, tagged with the retry name: imagibox.retry.retries,
+ * imagibox.retry.exhausted{reason=attempts|budget|deadline} and
+ * imagibox.retry.budget.
+ */
+@Slf4j
+public class BudgetedRetry {
+
+    private final String name;
+    private final RetryProperties properties;
+    private final Predicate<Throwable> retryable;
+    private final TokenBudget budget;
+
+    private final Counter retries;
+    private final Counter attemptsExhausted;
+    private final Counter budgetExhausted;
+    private final Counter deadlineExhausted;
+
+    public BudgetedRetry(String name, RetryProperties properties, Predicate<Throwable> retryable,
+            MeterRegistry meterRegistry) {
+        this.name = name;
+        this.properties = properties;
+        this.retryable = retryable;
+        this.budget = new TokenBudget(properties.getBudgetRatio(), properties.getMaxBurst());
+
+        this.retries = Counter.builder("imagibox.retry.retries").tag("name", name).register(meterRegistry);
+        this.attemptsExhausted = exhausted("attempts", meterRegistry);
+        this.budgetExhausted = exhausted("budget", meterRegistry);
+        this.deadlineExhausted = exhausted("deadline", meterRegistry);
+        Gauge.builder("imagibox.retry.budget", budget, TokenBudget::getTokens)
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    public <T> T call(Supplier<T> call) {
+        budget.deposit();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.get();
+            } catch (RuntimeException e) {
+                Duration backoff = retryBackoff(e, attempt, GenerationContext.deadline());
+                if (backoff == null) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(backoff.toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Resubscribes to the stream on transient failures, but only while it has not
+     * emitted anything: once text reached the client a retry would duplicate it.
+     */
+    public <T> Flux<T> stream(Flux<T> stream) {
+        // Subscription happens on another thread, so read the deadline while still on the caller's
+        Instant deadline = GenerationContext.deadline();
+        return Flux.defer(() -> {
+            budget.deposit();
+            AtomicBoolean emitted = new AtomicBoolean();
+            return stream
+                    .doOnNext(item -> emitted.set(true))
+                    .retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+                        Duration backoff = emitted.get()
+                                ? null
+                                : retryBackoff(signal.failure(), (int) signal.totalRetries() + 1, deadline);
+                        return backoff != null ? Mono.delay(backoff) : Mono.error(signal.failure());
+                    })));
+        });
+    }
+
+    /**
+     * @return how long to wait before the next attempt, or null when the failure must propagate
+     */
+    private Duration retryBackoff(Throwable error, int attempt, Instant deadline) {
+        if (!retryable.test(error)) {
+            return null;
+        }
+        if (attempt >= properties.getMaxAttempts()) {
+            attemptsExhausted.increment();
+            return null;
+        }
+
+        double exponential = properties.getInitialBackoff().toMillis()
+                * Math.pow(properties.getMultiplier(), attempt - 1);
+        long capped = (long) Math.min(properties.getMaxBackoff().toMillis(), exponential);
+        Duration backoff = Duration.ofMillis(ThreadLocalRandom.current().nextLong(capped + 1));
+
+        if (deadline != null && Instant.now().plus(backoff).isAfter(deadline)) {
+            deadlineExhausted.increment();
+            return null;
+        }
+        if (!budget.tryWithdraw()) {
+            budgetExhausted.increment();
+            log.warn("Retry budget for {} is exhausted, giving up after attempt {}", name, attempt);
+            return null;
+        }
+
+        retries.increment();
+        log.info("Retrying {} after {} ms (attempt {} failed: {})", name, backoff.toMillis(), attempt,
+                error.getMessage());
+        return backoff;
+    }
+
+    private Counter exhausted(String reason, MeterRegistry meterRegistry) {
+        return Counter.builder("imagibox.retry.exhausted")
+                .tag("name", name)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
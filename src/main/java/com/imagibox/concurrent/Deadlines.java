@@ -0,0 +1,106 @@
+package com.imagibox.concurrent;
+
+import com.imagibox.exception.DeadlineExceededException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enforces the deadline carried in GenerationContext around blocking provider calls.
+ * A call still running at the deadline has its thread interrupted, which aborts
+ * the JDK HttpClient exchange used for Gemini text; clients that ignore interrupts
+ * finish on their own, but no later stage of the request starts after the deadline.
+ */
+public final class Deadlines {
+
+    private static final ScheduledThreadPoolExecutor WATCHDOG = createWatchdog();
+
+    private Deadlines() {
+    }
+
+    /**
+     * @return time left until the current deadline, or null when the work has none
+     */
+    public static Duration remaining() {
+        Instant deadline = GenerationContext.deadline();
+        return deadline != null ? Duration.between(Instant.now(), deadline) : null;
+    }
+
+    /**
+     * Fails fast when the current deadline has already passed.
+     */
+    public static void check(String what) {
+        Duration remaining = remaining();
+        if (remaining != null && !remaining.isPositive()) {
+            throw new DeadlineExceededException("Deadline passed before " + what);
+        }
+    }
+
+    /**
+     * Runs the call, interrupting it if it is still running at the current deadline.
+     */
+    public static <T, E extends Exception> T callWithin(String what, AdaptiveBulkhead.Call<T, E> call) throws E {
+        Duration remaining = remaining();
+        if (remaining == null) {
+            return call.call();
+        }
+        check(what);
+
+        Watch watch = new Watch(Thread.currentThread());
+        ScheduledFuture<?> timer = WATCHDOG.schedule(watch::expire, remaining.toNanos(), TimeUnit.NANOSECONDS);
+        try {
+            return call.call();
+        } catch (Exception e) {
+            if (watch.stop()) {
+                throw new DeadlineExceededException("Deadline passed during " + what);
+            }
+            throw e;
+        } finally {
+            timer.cancel(false);
+            if (watch.stop()) {
+                // Clear the interrupt so it does not leak into whatever the thread runs next
+                Thread.interrupted();
+            }
+        }
+    }
+
+    private static final class Watch {
+        private final Thread thread;
+        private boolean finished;
+        private boolean expired;
+
+        private Watch(Thread thread) {
+            this.thread = thread;
+        }
+
+        private synchronized void expire() {
+            if (!finished) {
+                expired = true;
+                thread.interrupt();
+            }
+        }
+
+        /**
+         * @return whether the deadline interrupted the call
+         */
+        private synchronized boolean stop() {
+            finished = true;
+            return expired;
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createWatchdog() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+            thread.setName("imagibox-deadline-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+}
@@ -0,0 +1,127 @@
+package com.imagibox.concurrent;
+
+import com.imagibox.domain.enums.GenerationPriority;
+
+import java.time.Instant;
+
+/**
+ * Scheduling attributes of the generation work running on the current thread:
+ * its priority class, the family (parent account) and user it is billed to and
+ * the deadline by which its result is no longer useful.
+ * Executors capture it when a task is submitted and restore it on the worker,
+ * so a whole pipeline of async stages inherits the attributes of the request
+ * that started it.
+ */
+public final class GenerationContext {
+
+    private record Attributes(GenerationPriority priority, Long family, Long user, Instant deadline) {
+    }
+
+    private static final ThreadLocal<Attributes> CURRENT = new ThreadLocal<>();
+
+    private GenerationContext() {
+    }
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    public static GenerationPriority priority() {
+        Attributes current = CURRENT.get();
+        return current != null ? current.priority() : GenerationPriority.ONE_SHOT;
+    }
+
+    /**
+     * @return the family id of the current work, or null when it is not tied to a user
+     */
+    public static Long family() {
+        Attributes current = CURRENT.get();
+        return current != null ? current.family() : null;
+    }
+
+    /**
+     * @return the id of the user the current work is for, or null when it is not tied to a user
+     */
+    public static Long user() {
+        Attributes current = CURRENT.get();
+        return current != null ? current.user() : null;
+    }
+
+    /**
+     * @return the deadline of the current work, or null when it has none
+     */
+    public static Instant deadline() {
+        Attributes current = CURRENT.get();
+        return current != null ? current.deadline() : null;
+    }
+
+    /**
+     * Sets all attributes until the returned scope is closed; use with try-with-resources.
+     */
+    public static Scope open(GenerationPriority priority, Long family, Long user, Instant deadline) {
+        Attributes previous = CURRENT.get();
+        CURRENT.set(new Attributes(priority, family, user, deadline));
+        return () -> restore(previous);
+    }
+
+    /**
+     * Changes priority, family and deadline and keeps the current user.
+     */
+    public static Scope open(GenerationPriority priority, Long family, Instant deadline) {
+        return open(priority, family, user(), deadline);
+    }
+
+    /**
+     * Changes priority and family and keeps the current user and deadline.
+     */
+    public static Scope open(GenerationPriority priority, Long family) {
+        return open(priority, family, user(), deadline());
+    }
+
+    /**
+     * Changes the priority and keeps the current family, user and deadline.
+     */
+    public static Scope open(GenerationPriority priority) {
+        return open(priority, family(), user(), deadline());
+    }
+
+    /**
+     * Changes the deadline and keeps the current priority, family and user.
+     */
+    public static Scope withDeadline(Instant deadline) {
+        return open(priority(), family(), user(), deadline);
+    }
+
+    /**
+     * Changes the user and deadline and keeps the current priority and family.
+     */
+    public static Scope forUser(Long user, Instant deadline) {
+        return open(priority(), family(), user, deadline);
+    }
+
+    /**
+     * Binds the submitting thread's context to the task.
+     */
+    public static Runnable wrap(Runnable task) {
+        Attributes captured = CURRENT.get();
+        return () -> {
+            Attributes previous = CURRENT.get();
+            restore(captured);
+            try {
+                task.run();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    private static void restore(Attributes attributes) {
+        if (attributes == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(attributes);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.imagibox.concurrent;
+
+import com.imagibox.config.HedgingProperties;
+import com.imagibox.exception.DeadlineExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hedged requests for a call with a long latency tail: when the first attempt
+ * has not returned by the configured percentile of recent latencies, an
+ * identical second attempt is started and whichever succeeds first wins. The
+ * loser is cancelled by interrupting its thread.
+ *
+ * Hedges are paid from a budget that earns budget-ratio per primary call, so
+ * extra spend stays bounded even when the provider is slow across the board.
+ * Attempts run on their own executor; when it is full the call runs unhedged
+ * on the caller's thread.
+ *
+ * Metrics, tagged with the hedge name: imagibox.hedge.calls,
+ * imagibox.hedge.hedges, imagibox.hedge.wins and imagibox.hedge.delay.
+ */
+@Slf4j
+public class HedgedExecutor {
+
+    private final String name;
+    private final HedgingProperties properties;
+    private final Executor attempts;
+    private final TokenBudget budget;
+
+    private final long[] window;
+    private int samples;
+    private int next;
+
+    private final Counter calls;
+    private final Counter hedges;
+    private final Counter wins;
+
+    public HedgedExecutor(String name, HedgingProperties properties, Executor attempts, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.properties = properties;
+        this.attempts = attempts;
+        this.window = new long[properties.getWindowSize()];
+        this.budget = new TokenBudget(properties.getBudgetRatio(), properties.getMaxBurst());
+
+        this.calls = Counter.builder("imagibox.hedge.calls").tag("name", name).register(meterRegistry);
+        this.hedges = Counter.builder("imagibox.hedge.hedges").tag("name", name).register(meterRegistry);
+        this.wins = Counter.builder("imagibox.hedge.wins").tag("name", name).register(meterRegistry);
+        Gauge.builder("imagibox.hedge.delay", this, h -> TimeUnit.NANOSECONDS.toMillis(h.hedgeDelayNanos()))
+                .tag("name", name)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    public <T> T execute(Callable<T> call) throws Exception {
+        if (!properties.isEnabled()) {
+            return call.call();
+        }
+        calls.increment();
+        budget.deposit();
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        FutureTask<T> primary = attempt(call, result, pending, false);
+        FutureTask<T> hedge = null;
+        try {
+            attempts.execute(primary);
+        } catch (TaskRejectedException e) {
+            return call.call();
+        }
+
+        try {
+            try {
+                return result.get(hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                Deadlines.check(name + " hedge");
+                if (!result.isDone() && budget.tryWithdraw()) {
+                    pending.incrementAndGet();
+                    hedge = attempt(call, result, pending, true);
+                    try {
+                        attempts.execute(hedge);
+                        hedges.increment();
+                        log.debug("Hedging {} call after {} ms", name,
+                                TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos()));
+                    } catch (TaskRejectedException rejected) {
+                        pending.decrementAndGet();
+                        budget.refund();
+                        hedge = null;
+                    }
+                }
+                return await(result);
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        } finally {
+            // Whoever lost is no longer needed
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Waits for the winner, but never past the deadline of the current work.
+     */
+    private <T> T await(CompletableFuture<T> result) throws InterruptedException, ExecutionException {
+        Duration remaining = Deadlines.remaining();
+        if (remaining == null) {
+            return result.get();
+        }
+        try {
+            return result.get(Math.max(0, remaining.toNanos()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("Deadline passed during " + name);
+        }
+    }
+
+    private <T> FutureTask<T> attempt(Callable<T> call, CompletableFuture<T> result, AtomicInteger pending,
+            boolean isHedge) {
+        return new FutureTask<>(() -> {
+            long start = System.nanoTime();
+            try {
+                T value = call.call();
+                record(System.nanoTime() - start);
+                if (result.complete(value) && isHedge) {
+                    wins.increment();
+                }
+                return value;
+            } catch (Exception e) {
+                // The call only fails once every attempt has failed
+                if (pending.decrementAndGet() == 0) {
+                    result.completeExceptionally(e);
+                }
+                throw e;
+            }
+        });
+    }
+
+    private synchronized void record(long latencyNanos) {
+        window[next] = latencyNanos;
+        next = (next + 1) % window.length;
+        samples = Math.min(samples + 1, window.length);
+    }
+
+    private synchronized long hedgeDelayNanos() {
+        if (samples < properties.getMinSamples()) {
+            return properties.getInitialDelay().toNanos();
+        }
+        long[] sorted = Arrays.copyOf(window, samples);
+        Arrays.sort(sorted);
+        int index = (int) Math.min(samples - 1, Math.ceil(properties.getPercentile() * samples) - 1);
+        return Math.max(properties.getMinDelay().toNanos(), sorted[Math.max(0, index)]);
+    }
+}
@@ -0,0 +1,204 @@
+package com.imagibox.concurrent;
+
+import com.imagibox.domain.enums.GenerationPriority;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs at most {@code concurrency} tasks at once and queues the rest by priority
+ * and family instead of FIFO.
+ *
+ * Within a family, a queued task's rank is its enqueue time plus the aging offset
+ * of its priority class, so interactive work jumps ahead of one-shot and
+ * background work, but a task that has waited longer than the offset difference
+ * still goes first and nothing starves.
+ *
+ * Across families the executor keeps a virtual clock per family: every dispatched
+ * task pushes the family's clock one quantum ahead, and a family's next task
+ * cannot rank earlier than its clock. A family flooding the pool therefore ranks
+ * behind families that have used less, and while others are waiting it holds at
+ * most {@code maxShare} of the workers and of the queue. When nobody else is
+ * waiting it may use everything.
+ *
+ * Metric: imagibox.executor.queue-wait{executor, priority}.
+ */
+@Slf4j
+public class PriorityTaskExecutor implements TaskExecutor {
+
+    private record QueuedTask(Runnable task, GenerationPriority priority, Family family, long enqueuedAt,
+            long agingOffset, long sequence) {
+
+        long rank() {
+            return enqueuedAt + agingOffset;
+        }
+    }
+
+    private static final class Family {
+        private final PriorityQueue<QueuedTask> queued = new PriorityQueue<>(
+                Comparator.comparingLong(QueuedTask::rank).thenComparingLong(QueuedTask::sequence));
+        private int running;
+        private long clock;
+
+        private Family(long now) {
+            this.clock = now;
+        }
+
+        private boolean idle(long now) {
+            return running == 0 && queued.isEmpty() && clock <= now;
+        }
+    }
+
+    private final Executor workers;
+    private final int concurrency;
+    private final int queueCapacity;
+    private final int familyConcurrency;
+    private final int familyQueueCapacity;
+    private final long quantumNanos;
+    private final long maxLeadNanos;
+    private final Map<GenerationPriority, Long> agingOffsetNanos = new EnumMap<>(GenerationPriority.class);
+    private final Map<GenerationPriority, Timer> queueWait = new EnumMap<>(GenerationPriority.class);
+
+    private final Map<Long, Family> families = new HashMap<>();
+    private int running;
+    private int queued;
+    private long sequence;
+
+    /**
+     * @param workers  runs each dispatched task; never receives more than {@code concurrency} tasks at once
+     * @param quantum  virtual time a family is charged per dispatched task
+     * @param maxShare fraction of the workers and of the queue one family may hold while others wait
+     */
+    public PriorityTaskExecutor(String name, Executor workers, int concurrency, int queueCapacity,
+            Map<GenerationPriority, Duration> agingOffsets, Duration quantum, double maxShare,
+            MeterRegistry meterRegistry) {
+        this.workers = workers;
+        this.concurrency = concurrency;
+        this.queueCapacity = queueCapacity;
+        this.familyConcurrency = Math.max(1, (int) Math.ceil(concurrency * maxShare));
+        this.familyQueueCapacity = Math.max(1, (int) Math.ceil(queueCapacity * maxShare));
+        this.quantumNanos = quantum.toNanos();
+        // Bound how far ahead a busy family's clock can run, so an old burst is not held against it forever
+        this.maxLeadNanos = quantumNanos * concurrency;
+
+        for (GenerationPriority priority : GenerationPriority.values()) {
+            agingOffsetNanos.put(priority, agingOffsets.getOrDefault(priority, Duration.ZERO).toNanos());
+            queueWait.put(priority, Timer.builder("imagibox.executor.queue-wait")
+                    .tag("executor", name)
+                    .tag("priority", priority.name())
+                    .register(meterRegistry));
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        GenerationPriority priority = GenerationContext.priority();
+        Long familyId = GenerationContext.family();
+        long now = System.nanoTime();
+        Runnable bound = GenerationContext.wrap(task);
+
+        synchronized (this) {
+            Family family = families.computeIfAbsent(familyId, id -> new Family(now));
+            QueuedTask queuedTask = new QueuedTask(bound, priority, family, now, agingOffsetNanos.get(priority),
+                    sequence++);
+
+            if (running >= concurrency) {
+                // The family's queue share only applies while another family has tasks queued too
+                boolean othersWaiting = queued > family.queued.size();
+                if (queued >= queueCapacity || (othersWaiting && family.queued.size() >= familyQueueCapacity)) {
+                    if (family.idle(now)) {
+                        families.remove(familyId);
+                    }
+                    throw new TaskRejectedException("Executor queue is full, rejecting " + task);
+                }
+                family.queued.add(queuedTask);
+                queued++;
+                return;
+            }
+
+            running++;
+            dispatched(queuedTask, now);
+            try {
+                workers.execute(() -> runFrom(queuedTask));
+            } catch (RuntimeException e) {
+                running--;
+                family.running--;
+                throw e;
+            }
+        }
+    }
+
+    private void runFrom(QueuedTask first) {
+        // Keep the worker busy with the best queued task until the queue is empty
+        QueuedTask next = first;
+        while (next != null) {
+            queueWait.get(next.priority()).record(System.nanoTime() - next.enqueuedAt(), TimeUnit.NANOSECONDS);
+            try {
+                next.task().run();
+            } catch (RuntimeException e) {
+                log.error("Uncaught exception in {} task", next.priority(), e);
+            }
+            next = takeNext(next);
+        }
+    }
+
+    private synchronized QueuedTask takeNext(QueuedTask finished) {
+        finished.family().running--;
+        long now = System.nanoTime();
+
+        Family best = null;
+        boolean bestUnderShare = false;
+        long bestKey = 0;
+        long bestSequence = 0;
+        for (Iterator<Family> it = families.values().iterator(); it.hasNext(); ) {
+            Family family = it.next();
+            QueuedTask head = family.queued.peek();
+            if (head == null) {
+                if (family.idle(now)) {
+                    it.remove();
+                }
+                continue;
+            }
+
+            // A family over its share only runs when every waiting family is over its share too
+            boolean underShare = family.running < familyConcurrency;
+            long key = Math.max(family.clock, head.enqueuedAt()) + head.agingOffset();
+            if (best == null
+                    || (underShare && !bestUnderShare)
+                    || (underShare == bestUnderShare
+                            && (key < bestKey || (key == bestKey && head.sequence() < bestSequence)))) {
+                best = family;
+                bestUnderShare = underShare;
+                bestKey = key;
+                bestSequence = head.sequence();
+            }
+        }
+
+        if (best == null) {
+            running--;
+            return null;
+        }
+        QueuedTask next = best.queued.poll();
+        queued--;
+        dispatched(next, now);
+        return next;
+    }
+
+    private void dispatched(QueuedTask task, long now) {
+        Family family = task.family();
+        family.running++;
+        family.clock = Math.min(Math.max(family.clock, now) + quantumNanos, now + maxLeadNanos);
+    }
+}
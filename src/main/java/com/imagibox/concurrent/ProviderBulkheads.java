@@ -0,0 +1,45 @@
+package com.imagibox.concurrent;
+
+import com.imagibox.config.BulkheadProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One adaptive bulkhead per external provider, so a slow provider only
+ * exhausts its own permits. Limits come from imagibox.bulkheads.providers.
+ */
+@Component
+@RequiredArgsConstructor
+public class ProviderBulkheads {
+
+    public static final String GEMINI_TEXT = "gemini-text";
+    public static final String GEMINI_IMAGE = "gemini-image";
+    public static final String CLOUDINARY = "cloudinary";
+
+    private final BulkheadProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, AdaptiveBulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    public AdaptiveBulkhead geminiText() {
+        return get(GEMINI_TEXT);
+    }
+
+    public AdaptiveBulkhead geminiImage() {
+        return get(GEMINI_IMAGE);
+    }
+
+    public AdaptiveBulkhead cloudinary() {
+        return get(CLOUDINARY);
+    }
+
+    private AdaptiveBulkhead get(String name) {
+        return bulkheads.computeIfAbsent(name, n -> new AdaptiveBulkhead(n,
+                properties.getProviders().getOrDefault(n, new BulkheadProperties.Limits()),
+                meterRegistry));
+    }
+}
@@ -0,0 +1,123 @@
+package com.imagibox.concurrent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent calls: the first caller for a key (the leader)
+ * runs the call, and callers arriving while it is in flight (followers) share
+ * its result. Nothing is cached once the call completes.
+ *
+ * Metrics: imagibox.singleflight.calls{flight, role=leader|follower} and
+ * imagibox.singleflight.in-flight.
+ */
+@Component
+@Slf4j
+public class SingleFlight {
+
+    private record FlightKey(String flight, Object key) {
+    }
+
+    /**
+     * The shared future and how many callers still want its result; a caller stops
+     * wanting it when it cancels its copy.
+     */
+    private static final class Flight<T> {
+        private final CompletableFuture<T> shared = new CompletableFuture<>();
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        CompletableFuture<T> join() {
+            waiting.incrementAndGet();
+            CompletableFuture<T> copy = shared.copy();
+            copy.whenComplete((result, error) -> {
+                if (copy.isCancelled()) {
+                    waiting.decrementAndGet();
+                }
+            });
+            return copy;
+        }
+
+        boolean abandoned() {
+            return waiting.get() <= 0;
+        }
+    }
+
+    private final Map<FlightKey, Flight<?>> inFlight = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    public SingleFlight(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gaugeMapSize("imagibox.singleflight.in-flight", Tags.empty(), inFlight);
+    }
+
+    /**
+     * Runs the call unless an identical one is already in flight. Every caller gets its
+     * own copy of the shared future, so cancelling or timing out one caller's copy
+     * does not affect the others.
+     */
+    public <T> CompletableFuture<T> execute(String flight, Object key, Supplier<CompletableFuture<T>> call) {
+        return execute(flight, key, abandoned -> call.get());
+    }
+
+    /**
+     * As {@link #execute(String, Object, Supplier)}, handing the call a check that turns
+     * true once every caller has cancelled its copy, so later stages can skip work
+     * nobody is waiting for.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String flight, Object key,
+            Function<BooleanSupplier, CompletableFuture<T>> call) {
+        FlightKey flightKey = new FlightKey(flight, key);
+        Flight<T> created = new Flight<>();
+
+        Flight<T> existing = (Flight<T>) inFlight.putIfAbsent(flightKey, created);
+        if (existing != null) {
+            counter(flight, "follower").increment();
+            log.debug("Joined in-flight {} call", flight);
+            return existing.join();
+        }
+
+        counter(flight, "leader").increment();
+        CompletableFuture<T> leaderCopy = created.join();
+        try {
+            call.apply(created::abandoned).whenComplete((result, error) -> {
+                inFlight.remove(flightKey, created);
+                if (error != null) {
+                    created.shared.completeExceptionally(error);
+                } else {
+                    created.shared.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(flightKey, created);
+            created.shared.completeExceptionally(e);
+        }
+        return leaderCopy;
+    }
+
+    /**
+     * Normalizes free text for use in a key: trimmed, lower-cased, whitespace collapsed.
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private Counter counter(String flight, String role) {
+        return meterRegistry.counter("imagibox.singleflight.calls", "flight", flight, "role", role);
+    }
+}
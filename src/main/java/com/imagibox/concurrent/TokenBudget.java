@@ -0,0 +1,39 @@
+package com.imagibox.concurrent;
+
+/**
+ * Budget for extra provider calls (retries, hedges) as a fraction of regular
+ * calls: every regular call earns {@code ratio} tokens, up to {@code maxTokens},
+ * and every extra call spends one. With ratio 0.1 extra load stays at about 10%
+ * however badly the provider behaves.
+ */
+public class TokenBudget {
+
+    private final double ratio;
+    private final double maxTokens;
+    private double tokens;
+
+    public TokenBudget(double ratio, double maxTokens) {
+        this.ratio = ratio;
+        this.maxTokens = maxTokens;
+    }
+
+    public synchronized void deposit() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    public synchronized boolean tryWithdraw() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    public synchronized void refund() {
+        tokens = Math.min(maxTokens, tokens + 1);
+    }
+
+    public synchronized double getTokens() {
+        return tokens;
+    }
+}
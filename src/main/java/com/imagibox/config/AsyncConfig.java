@@ -1,21 +1,132 @@
 package com.imagibox.config;
 
+import com.imagibox.concurrent.BoundedVirtualThreadExecutor;
+import com.imagibox.concurrent.GenerationContext;
+import com.imagibox.concurrent.HedgedExecutor;
+import com.imagibox.concurrent.PriorityTaskExecutor;
+import com.imagibox.concurrent.ProviderBulkheads;
+import com.imagibox.domain.enums.GenerationPriority;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
-import java.util.concurrent.Executor;
+import java.time.Duration;
+import java.util.Map;
 
+/**
+ * Executors for generation work. With spring.threads.virtual.enabled (Java 21
+ * runtime; startup fails on older ones) every pool becomes a BoundedVirtualThreadExecutor: the configured
+ * sizes are kept as concurrency limits, but blocking on Gemini, Cloudinary,
+ * JDBC or Redis no longer ties up a platform thread.
+ *
+ * Every executor carries the submitting thread's GenerationContext over to the task.
+ */
 @Configuration
 public class AsyncConfig {
 
+    private final boolean virtualThreads;
+
+    public AsyncConfig(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        // Spring silently keeps platform threads for Tomcat on older JVMs; fail loudly instead of half-applying it
+        int javaVersion = Runtime.version().feature();
+        if (virtualThreads && javaVersion < 21) {
+            throw new IllegalStateException("spring.threads.virtual.enabled requires a Java 21 runtime, but this is "
+                    + "Java " + javaVersion + ". Upgrade the runtime or set VIRTUAL_THREADS_ENABLED=false.");
+        }
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Runs the AI and illustration stages. Queued stages are ordered by the
+     * GenerationPriority of the request that started them, with aging, and
+     * shared fairly between families.
+     */
     @Bean(name = "taskExecutor")
-    public Executor taskExecutor() {
+    public TaskExecutor taskExecutor(
+            @Value("${imagibox.async.max-pool-size:10}") int maxPoolSize,
+            @Value("${imagibox.async.queue-capacity:100}") int queueCapacity,
+            @Value("${imagibox.async.virtual-concurrency:200}") int virtualConcurrency,
+            @Value("${imagibox.scheduling.aging.interactive:PT0S}") Duration interactiveOffset,
+            @Value("${imagibox.scheduling.aging.one-shot:PT5S}") Duration oneShotOffset,
+            @Value("${imagibox.scheduling.aging.background:PT30S}") Duration backgroundOffset,
+            @Value("${imagibox.scheduling.fair-share.quantum:PT1S}") Duration quantum,
+            @Value("${imagibox.scheduling.fair-share.max-share:0.5}") double maxShare,
+            MeterRegistry meterRegistry) {
+        // Provider calls are already capped by the bulkheads, so virtual mode can run far more stages at once
+        int concurrency = virtualThreads ? virtualConcurrency : maxPoolSize;
+        TaskExecutor workers = virtualThreads
+                ? new VirtualThreadTaskExecutor("imagibox-async-")
+                : threadPool("imagibox-async-", maxPoolSize, maxPoolSize, Integer.MAX_VALUE);
+
+        return new PriorityTaskExecutor("taskExecutor", workers, concurrency, queueCapacity,
+                Map.of(GenerationPriority.INTERACTIVE, interactiveOffset,
+                        GenerationPriority.ONE_SHOT, oneShotOffset,
+                        GenerationPriority.BACKGROUND, backgroundOffset),
+                quantum, maxShare, meterRegistry);
+    }
+
+    /**
+     * Worker pool for background story jobs, kept separate from taskExecutor
+     * because each job blocks while it waits on the image futures.
+     */
+    @Bean(name = "storyJobExecutor")
+    public TaskExecutor storyJobExecutor(
+            @Value("${imagibox.jobs.core-pool-size:4}") int corePoolSize,
+            @Value("${imagibox.jobs.max-pool-size:8}") int maxPoolSize,
+            @Value("${imagibox.jobs.queue-capacity:200}") int queueCapacity) {
+        return executor("imagibox-job-", corePoolSize, maxPoolSize, queueCapacity);
+    }
+
+    /**
+     * Speculative branch generation. No queue: when every worker is busy the
+     * branch is simply skipped, which caps how much speculative work is in flight.
+     */
+    @Bean(name = "speculativeExecutor")
+    public TaskExecutor speculativeExecutor(
+            @Value("${imagibox.speculative.max-in-flight:4}") int maxInFlight) {
+        return executor("imagibox-speculative-", maxInFlight, maxInFlight, 0);
+    }
+
+    /**
+     * Batch story generation. The pool size is the global number of batch stories
+     * generated at once; each batch adds at most its per-family share of workers.
+     */
+    @Bean(name = "batchExecutor")
+    public TaskExecutor batchExecutor(
+            @Value("${imagibox.batch.max-concurrency:4}") int maxConcurrency,
+            @Value("${imagibox.batch.queue-capacity:100}") int queueCapacity) {
+        return executor("imagibox-batch-", maxConcurrency, maxConcurrency, queueCapacity);
+    }
+
+    /**
+     * Hedged Gemini image calls. Attempts get their own small pool without a queue:
+     * a waiting caller must never sit behind its own attempt.
+     */
+    @Bean
+    public HedgedExecutor geminiImageHedging(HedgingProperties properties, MeterRegistry meterRegistry) {
+        return new HedgedExecutor(ProviderBulkheads.GEMINI_IMAGE, properties,
+                executor("imagibox-hedge-", properties.getMaxInFlight(), properties.getMaxInFlight(), 0),
+                meterRegistry);
+    }
+
+    private TaskExecutor executor(String threadNamePrefix, int corePoolSize, int maxPoolSize, int queueCapacity) {
+        return virtualThreads
+                ? new BoundedVirtualThreadExecutor(threadNamePrefix, maxPoolSize, queueCapacity)
+                : threadPool(threadNamePrefix, corePoolSize, maxPoolSize, queueCapacity);
+    }
+
+    private ThreadPoolTaskExecutor threadPool(String threadNamePrefix, int corePoolSize, int maxPoolSize,
+            int queueCapacity) {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(5);
-        executor.setMaxPoolSize(10);
-        executor.setQueueCapacity(100);
-        executor.setThreadNamePrefix("imagibox-async-");
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setTaskDecorator(GenerationContext::wrap);
         executor.initialize();
         return executor;
     }
@@ -0,0 +1,29 @@
+package com.imagibox.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@ConfigurationProperties(prefix = "imagibox.bulkheads")
+@Getter
+@Setter
+public class BulkheadProperties {
+    private Map<String, Limits> providers = new HashMap<>();
+
+    @Getter
+    @Setter
+    public static class Limits {
+        private int initialLimit = 4;
+        private int minLimit = 1;
+        private int maxLimit = 20;
+        private double backoffRatio = 0.9;
+        private Duration latencyTarget = Duration.ofSeconds(30);
+        private Duration maxWait = Duration.ofSeconds(10);
+    }
+}
@@ -0,0 +1,22 @@
+package com.imagibox.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "imagibox.circuit-breaker.gemini-image")
+@Getter
+@Setter
+public class CircuitBreakerProperties {
+    private float failureRateThreshold = 50;
+    private float slowCallRateThreshold = 50;
+    private Duration slowCallDuration = Duration.ofSeconds(30);
+    private int slidingWindowSize = 20;
+    private int minimumNumberOfCalls = 10;
+    private Duration waitInOpenState = Duration.ofSeconds(30);
+    private int permittedCallsInHalfOpenState = 3;
+}
@@ -0,0 +1,25 @@
+package com.imagibox.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * End-to-end budgets per endpoint. The text budget bounds the response; the
+ * illustration is attached afterwards and gets its own image budget; chapters
+ * still pending past it are marked failed every pendingImageSweep.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "imagibox.generation.deadlines")
+@Getter
+@Setter
+public class DeadlineProperties {
+    private Duration oneShot = Duration.ofSeconds(60);
+    private Duration interactive = Duration.ofSeconds(60);
+    private Duration nextChapter = Duration.ofSeconds(45);
+    private Duration image = Duration.ofMinutes(2);
+    private Duration pendingImageSweep = Duration.ofMinutes(1);
+}
@@ -0,0 +1,24 @@
+package com.imagibox.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Curated illustrations pre-uploaded to Cloudinary as {folder}/{mood}-{n},
+ * n = 1..variants, where mood is the slug of the story mood (e.g. "vui-ve").
+ */
+@Configuration
+@ConfigurationProperties(prefix = "imagibox.fallback-illustrations")
+@Getter
+@Setter
+public class FallbackIllustrationProperties {
+    private String folder = "imagibox/fallback";
+    private List<String> moods = new ArrayList<>();
+    private String defaultMood = "vui-ve";
+    private int variants = 3;
+}
@@ -0,0 +1,27 @@
+package com.imagibox.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "imagibox.hedging")
+@Getter
+@Setter
+public class HedgingProperties {
+    private boolean enabled = false;
+    /** Latency percentile of recent calls after which the hedge is sent */
+    private double percentile = 0.95;
+    private Duration minDelay = Duration.ofSeconds(2);
+    /** Used until the window has enough samples */
+    private Duration initialDelay = Duration.ofSeconds(15);
+    private int windowSize = 200;
+    private int minSamples = 20;
+    /** Hedges allowed per primary call, e.g. 0.1 caps extra spend at 10% */
+    private double budgetRatio = 0.1;
+    private double maxBurst = 5;
+    private int maxInFlight = 8;
+}
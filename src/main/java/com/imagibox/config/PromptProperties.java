@@ -0,0 +1,25 @@
+package com.imagibox.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@ConfigurationProperties(prefix = "imagibox.prompts")
+@Getter
+@Setter
+public class PromptProperties {
+    private String location = "classpath*:prompts/*/*.st";
+    /** Version used by templates not listed in versions or experiments */
+    private String defaultVersion = "v1";
+    /** Template name to version */
+    private Map<String, String> versions = new HashMap<>();
+    /** Template name to version weights; each render picks a version by weight */
+    private Map<String, Map<String, Integer>> experiments = new HashMap<>();
+    /** For the token estimate; Vietnamese text tokenizes denser than English */
+    private double charsPerToken = 3.5;
+}
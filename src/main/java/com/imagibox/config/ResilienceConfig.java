@@ -0,0 +1,95 @@
+package com.imagibox.config;
+
+import com.imagibox.concurrent.BudgetedRetry;
+import com.imagibox.concurrent.ProviderBulkheads;
+import com.imagibox.exception.DeadlineExceededException;
+import com.imagibox.exception.ProviderBusyException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Retry and circuit breaking for the AI providers.
+ *
+ * The Gemini image circuit breaker opens on either the error rate or the
+ * slow-call rate over the sliding window, moves to half-open on its own after
+ * wait-in-open-state and lets a few probe calls through to decide whether to
+ * close again. Metrics are exported as resilience4j.circuitbreaker.*.
+ */
+@Configuration
+@Slf4j
+public class ResilienceConfig {
+
+    private static final Pattern LEADING_STATUS = Pattern.compile("^\\s*(\\d{3})\\b");
+
+    /**
+     * Retries for Gemini text calls. Spring AI's own retry is switched off
+     * (spring.ai.retry.max-attempts: 1) so the two do not multiply.
+     */
+    @Bean
+    public BudgetedRetry geminiTextRetry(RetryProperties properties, MeterRegistry meterRegistry) {
+        Set<Integer> statusCodes = properties.getRetryableStatusCodes();
+        return new BudgetedRetry(ProviderBulkheads.GEMINI_TEXT, properties,
+                error -> isRetryable(error, statusCodes), meterRegistry);
+    }
+
+    @Bean
+    public CircuitBreaker geminiImageCircuitBreaker(CircuitBreakerProperties properties,
+            MeterRegistry meterRegistry) {
+        CircuitBreakerConfig config = CircuitBreakerConfig.custom()
+                .failureRateThreshold(properties.getFailureRateThreshold())
+                .slowCallRateThreshold(properties.getSlowCallRateThreshold())
+                .slowCallDurationThreshold(properties.getSlowCallDuration())
+                .slidingWindowSize(properties.getSlidingWindowSize())
+                .minimumNumberOfCalls(properties.getMinimumNumberOfCalls())
+                .waitDurationInOpenState(properties.getWaitInOpenState())
+                .permittedNumberOfCallsInHalfOpenState(properties.getPermittedCallsInHalfOpenState())
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                // A full bulkhead is our own load shedding, and a call cut short by the request's deadline,
+                // an interrupt or a cancelled hedge says nothing about the provider; none of it is a failure.
+                // Socket timeouts (InterruptedIOException) still count.
+                .ignoreExceptions(ProviderBusyException.class, DeadlineExceededException.class,
+                        InterruptedException.class, CancellationException.class)
+                .build();
+
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(config);
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+
+        CircuitBreaker circuitBreaker = registry.circuitBreaker(ProviderBulkheads.GEMINI_IMAGE);
+        circuitBreaker.getEventPublisher().onStateTransition(event ->
+                log.warn("Circuit breaker {} changed state: {}", event.getCircuitBreakerName(),
+                        event.getStateTransition()));
+        return circuitBreaker;
+    }
+
+    private static boolean isRetryable(Throwable error, Set<Integer> statusCodes) {
+        if (error instanceof RestClientResponseException e) {
+            return statusCodes.contains(e.getStatusCode().value());
+        }
+        if (error instanceof WebClientResponseException e) {
+            return statusCodes.contains(e.getStatusCode().value());
+        }
+        if (error instanceof TransientAiException || error instanceof NonTransientAiException) {
+            // Spring AI's error handler formats these as "<status> - <body>"
+            Matcher status = LEADING_STATUS.matcher(String.valueOf(error.getMessage()));
+            return status.find() && statusCodes.contains(Integer.parseInt(status.group(1)));
+        }
+        // Connection failures are transient too, unless the deadline interrupted the call
+        return error instanceof ResourceAccessException && !Thread.currentThread().isInterrupted();
+    }
+}
@@ -0,0 +1,26 @@
+package com.imagibox.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@ConfigurationProperties(prefix = "imagibox.cache")
+@Getter
+@Setter
+public class ResponseCacheProperties {
+    private Map<String, Namespace> namespaces = new HashMap<>();
+
+    @Getter
+    @Setter
+    public static class Namespace {
+        private boolean enabled = true;
+        private Duration ttl = Duration.ofDays(1);
+        private long maxSize = 1000;
+    }
+}
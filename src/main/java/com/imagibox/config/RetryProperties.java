@@ -0,0 +1,26 @@
+package com.imagibox.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+@Configuration
+@ConfigurationProperties(prefix = "imagibox.retry.gemini-text")
+@Getter
+@Setter
+public class RetryProperties {
+    /** Including the first call */
+    private int maxAttempts = 3;
+    private Duration initialBackoff = Duration.ofMillis(500);
+    private Duration maxBackoff = Duration.ofSeconds(8);
+    private double multiplier = 2;
+    private Set<Integer> retryableStatusCodes = new HashSet<>(Set.of(429, 500, 502, 503, 504));
+    /** Retries allowed per first attempt, e.g. 0.1 caps extra load at 10% */
+    private double budgetRatio = 0.1;
+    private double maxBurst = 10;
+}
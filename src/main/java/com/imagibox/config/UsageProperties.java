@@ -0,0 +1,35 @@
+package com.imagibox.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "imagibox.usage")
+@Getter
+@Setter
+public class UsageProperties {
+    /** How long daily usage is kept in Redis */
+    private Duration retention = Duration.ofDays(35);
+    /** Cost units per 1000 tokens; completion tokens are priced higher than prompt tokens */
+    private double promptCostPer1k = 1;
+    private double completionCostPer1k = 4;
+    private Quota quota = new Quota();
+
+    public enum Unit {
+        TOKENS, COST
+    }
+
+    @Getter
+    @Setter
+    public static class Quota {
+        private boolean enabled = false;
+        private Unit unit = Unit.TOKENS;
+        /** Per day, in the quota unit; 0 means no limit */
+        private long dailyUserLimit = 0;
+        private long dailyFamilyLimit = 0;
+    }
+}
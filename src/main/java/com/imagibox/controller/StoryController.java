@@ -1,13 +1,21 @@
 package com.imagibox.controller;
 
+import com.imagibox.domain.enums.StoryMode;
+import com.imagibox.dto.request.BatchStoryRequest;
 import com.imagibox.dto.request.GenerateStoryRequest;
 import com.imagibox.dto.request.NextChapterRequest;
 import com.imagibox.dto.response.ChapterResponseDto;
+import com.imagibox.dto.response.StoryJobResponseDto;
 import com.imagibox.dto.response.StoryResponseDto;
+import com.imagibox.service.BatchStoryService;
+import com.imagibox.service.IdempotencyService;
+import com.imagibox.service.StoryJobService;
 import com.imagibox.service.StoryService;
+import com.imagibox.service.StoryStreamingService;
 import com.imagibox.util.SecurityUtils;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -15,9 +23,12 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.net.URI;
 import java.util.List;
 
 @RestController
@@ -27,6 +38,10 @@ import java.util.List;
 public class StoryController {
 
     private final StoryService storyService;
+    private final StoryJobService storyJobService;
+    private final StoryStreamingService storyStreamingService;
+    private final IdempotencyService idempotencyService;
+    private final BatchStoryService batchStoryService;
 
     @PostMapping(value = "/generate-one-shot", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(summary = "Generate a one-shot story", description = "Creates a complete story with optional sketch. Prompt is mandatory, sketch is optional.")
@@ -34,7 +49,8 @@ public class StoryController {
             @RequestParam("prompt") String prompt,
             @RequestParam(value = "mood", required = false) String mood,
             @RequestParam(value = "mode", required = false, defaultValue = "ONE_SHOT") String mode,
-            @RequestPart(value = "sketch", required = false) MultipartFile sketch) {
+            @RequestPart(value = "sketch", required = false) MultipartFile sketch,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
 
         // Build the request object from individual fields
         GenerateStoryRequest request = GenerateStoryRequest.builder()
@@ -44,7 +60,12 @@ public class StoryController {
                 .build();
 
         Long userId = SecurityUtils.getCurrentUserId();
-        StoryResponseDto story = storyService.generateOneShot(request, sketch, userId);
+        byte[] sketchBytes = storyService.readSketch(sketch);
+        StoryResponseDto story = idempotencyService.execute(userId, idempotencyKey,
+                idempotencyService.fingerprint("generate-one-shot", prompt, mood, sketchBytes),
+                StoryResponseDto.class,
+                () -> storyService.generateOneShot(request, sketchBytes, userId),
+                storyService::withCurrentImages);
         return ResponseEntity.ok(story);
     }
 
@@ -53,7 +74,8 @@ public class StoryController {
     public ResponseEntity<StoryResponseDto> generateInteractive(
             @RequestParam("prompt") String prompt,
             @RequestParam(value = "mood", required = false) String mood,
-            @RequestPart(value = "sketch", required = false) MultipartFile sketch) {
+            @RequestPart(value = "sketch", required = false) MultipartFile sketch,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
 
         GenerateStoryRequest request = GenerateStoryRequest.builder()
                 .prompt(prompt)
@@ -62,20 +84,147 @@ public class StoryController {
                 .build();
 
         Long userId = SecurityUtils.getCurrentUserId();
-        StoryResponseDto story = storyService.generateInteractive(request, sketch, userId);
+        byte[] sketchBytes = storyService.readSketch(sketch);
+        StoryResponseDto story = idempotencyService.execute(userId, idempotencyKey,
+                idempotencyService.fingerprint("generate-interactive", prompt, mood, sketchBytes),
+                StoryResponseDto.class,
+                () -> storyService.generateInteractive(request, sketchBytes, userId),
+                storyService::withCurrentImages);
         return ResponseEntity.ok(story);
     }
 
+    @PostMapping(value = "/jobs/generate-one-shot", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Queue a one-shot story generation job", description = "Returns 202 with a job id right away. Poll the job or subscribe to its events for the result.")
+    public ResponseEntity<StoryJobResponseDto> submitOneShotJob(
+            @RequestParam("prompt") String prompt,
+            @RequestParam(value = "mood", required = false) String mood,
+            @RequestPart(value = "sketch", required = false) MultipartFile sketch,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+
+        GenerateStoryRequest request = GenerateStoryRequest.builder()
+                .prompt(prompt)
+                .mood(mood)
+                .mode("ONE_SHOT")
+                .build();
+
+        Long userId = SecurityUtils.getCurrentUserId();
+        byte[] sketchBytes = storyService.readSketch(sketch);
+        StoryJobResponseDto job = idempotencyService.execute(userId, idempotencyKey,
+                idempotencyService.fingerprint("jobs/generate-one-shot", prompt, mood, sketchBytes),
+                StoryJobResponseDto.class,
+                () -> storyJobService.submit(StoryMode.ONE_SHOT, request, sketchBytes, userId),
+                stored -> storyJobService.getJob(stored.getJobId(), userId));
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/v1/stories/jobs/" + job.getJobId()))
+                .body(job);
+    }
+
+    @PostMapping(value = "/jobs/generate-interactive", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Queue an interactive story generation job", description = "Returns 202 with a job id right away. Poll the job or subscribe to its events for the result.")
+    public ResponseEntity<StoryJobResponseDto> submitInteractiveJob(
+            @RequestParam("prompt") String prompt,
+            @RequestParam(value = "mood", required = false) String mood,
+            @RequestPart(value = "sketch", required = false) MultipartFile sketch,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+
+        GenerateStoryRequest request = GenerateStoryRequest.builder()
+                .prompt(prompt)
+                .mood(mood)
+                .mode("INTERACTIVE")
+                .build();
+
+        Long userId = SecurityUtils.getCurrentUserId();
+        byte[] sketchBytes = storyService.readSketch(sketch);
+        StoryJobResponseDto job = idempotencyService.execute(userId, idempotencyKey,
+                idempotencyService.fingerprint("jobs/generate-interactive", prompt, mood, sketchBytes),
+                StoryJobResponseDto.class,
+                () -> storyJobService.submit(StoryMode.INTERACTIVE, request, sketchBytes, userId),
+                stored -> storyJobService.getJob(stored.getJobId(), userId));
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/v1/stories/jobs/" + job.getJobId()))
+                .body(job);
+    }
+
+    @PostMapping(value = "/batch", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasRole('PARENT')")
+    @Operation(summary = "Generate one-shot stories for several kids", description = "Quota for the whole batch is checked up front. Results are streamed as server-sent events: one \"item\" per story as it finishes, then \"done\".")
+    public SseEmitter generateBatch(@Valid @RequestBody BatchStoryRequest request) {
+        Long userId = SecurityUtils.getCurrentUserId();
+        return batchStoryService.generate(request, userId);
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    @Operation(summary = "Get the status of a story generation job")
+    public ResponseEntity<StoryJobResponseDto> getJob(@PathVariable String jobId) {
+        Long userId = SecurityUtils.getCurrentUserId();
+        return ResponseEntity.ok(storyJobService.getJob(jobId, userId));
+    }
+
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Subscribe to status events of a story generation job")
+    public SseEmitter subscribeToJob(@PathVariable String jobId) {
+        Long userId = SecurityUtils.getCurrentUserId();
+        return storyJobService.subscribe(jobId, userId);
+    }
+
     @PostMapping("/{storyId}/chapters/next")
     @Operation(summary = "Generate next chapter for interactive story")
     public ResponseEntity<ChapterResponseDto> generateNextChapter(
             @PathVariable Long storyId,
-            @RequestBody NextChapterRequest request) {
+            @RequestBody NextChapterRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         Long userId = SecurityUtils.getCurrentUserId();
-        ChapterResponseDto chapter = storyService.generateNextChapter(storyId, request, userId);
+        ChapterResponseDto chapter = idempotencyService.execute(userId, idempotencyKey,
+                idempotencyService.fingerprint("chapters/next", storyId, request.getUserChoice()),
+                ChapterResponseDto.class,
+                () -> storyService.generateNextChapter(storyId, request, userId),
+                storyService::withCurrentImages);
         return ResponseEntity.ok(chapter);
     }
 
+    @PostMapping(value = "/stream/generate-one-shot", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Generate a one-shot story, streaming the text as server-sent events")
+    public SseEmitter streamOneShot(
+            @RequestParam("prompt") String prompt,
+            @RequestParam(value = "mood", required = false) String mood,
+            @RequestPart(value = "sketch", required = false) MultipartFile sketch) {
+
+        GenerateStoryRequest request = GenerateStoryRequest.builder()
+                .prompt(prompt)
+                .mood(mood)
+                .mode("ONE_SHOT")
+                .build();
+
+        Long userId = SecurityUtils.getCurrentUserId();
+        return storyStreamingService.streamOneShot(request, storyService.readSketch(sketch), userId);
+    }
+
+    @PostMapping(value = "/stream/generate-interactive", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Generate an interactive story, streaming the first chapter as server-sent events")
+    public SseEmitter streamInteractive(
+            @RequestParam("prompt") String prompt,
+            @RequestParam(value = "mood", required = false) String mood,
+            @RequestPart(value = "sketch", required = false) MultipartFile sketch) {
+
+        GenerateStoryRequest request = GenerateStoryRequest.builder()
+                .prompt(prompt)
+                .mood(mood)
+                .mode("INTERACTIVE")
+                .build();
+
+        Long userId = SecurityUtils.getCurrentUserId();
+        return storyStreamingService.streamInteractive(request, storyService.readSketch(sketch), userId);
+    }
+
+    @PostMapping("/{storyId}/chapters/next/stream")
+    @Operation(summary = "Generate next chapter, streaming the text as server-sent events")
+    public SseEmitter streamNextChapter(
+            @PathVariable Long storyId,
+            @RequestBody NextChapterRequest request) {
+        Long userId = SecurityUtils.getCurrentUserId();
+        return storyStreamingService.streamNextChapter(storyId, request, userId);
+    }
+
     @GetMapping
     @Operation(summary = "Get all stories for the logged-in user with pagination")
     public ResponseEntity<Page<StoryResponseDto>> getMyStories(
@@ -100,6 +249,13 @@ public class StoryController {
         return ResponseEntity.ok(storyService.getStoryById(storyId, userId));
     }
 
+    @GetMapping(value = "/{storyId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Subscribe to story events, e.g. illustrations becoming ready")
+    public SseEmitter subscribeToStory(@PathVariable Long storyId) {
+        Long userId = SecurityUtils.getCurrentUserId();
+        return storyService.subscribeToStory(storyId, userId);
+    }
+
     @GetMapping("/{storyId}/chapters")
     @Operation(summary = "Get all chapters for a story")
     public ResponseEntity<List<ChapterResponseDto>> getChaptersByStoryId(
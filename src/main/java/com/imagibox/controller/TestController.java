@@ -1,5 +1,6 @@
 package com.imagibox.controller;
 
+import com.imagibox.service.PromptRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
@@ -10,6 +11,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.RestTemplate;
 
@@ -27,36 +29,16 @@ public class TestController {
     private String apiKey;
 
     private final ChatClient chatClient;
+    private final PromptRegistry promptRegistry;
 
     @GetMapping("/spring-ai")
-    public ResponseEntity<?> testSpringAi() {
+    public ResponseEntity<?> testSpringAi(@RequestParam(required = false) String version) {
         Instant start = Instant.now();
 
         try {
-            String testPrompt = """
-                    Bạn là một nhà văn chuyên viết truyện cho trẻ em từ 5-12 tuổi.
-
-                    **Nhiệm vụ:** Viết một câu chuyện ngắn khoảng 300-400 từ dựa trên ý tưởng của trẻ.
-
-                    **Ý tưởng của trẻ:** A brave astronaut exploring a magical planet with friendly aliens
-
-                    **Tâm trạng/Cảm xúc:** Adventurous and Exciting
-
-                    **Yêu cầu:**
-                    1. Nội dung phải phù hợp với trẻ em, tích cực, lạc quan
-                    2. Ngôn ngữ đơn giản, dễ hiểu
-                    3. Có bài học ý nghĩa (tình bạn, lòng dũng cảm, sự tốt bụng, khám phá, v.v.)
-                    4. Kết thúc có hậu
-                    5. Tránh nội dung bạo lực, đáng sợ hoặc không phù hợp
-                    6. Khuyến khích sự tò mò và khám phá
-
-                    Hãy viết câu chuyện theo định dạng JSON:
-                    {
-                      "title": "Tiêu đề câu chuyện",
-                      "content": "Nội dung câu chuyện đầy đủ",
-                      "moral": "Bài học rút ra"
-                    }
-                    """;
+            String testPrompt = storyPrompt(version,
+                    "A brave astronaut exploring a magical planet with friendly aliens",
+                    "Adventurous and Exciting");
 
             String response = chatClient.prompt(testPrompt).call().content();
 
@@ -90,35 +72,13 @@ public class TestController {
     }
 
     @GetMapping("/story-prompt")
-    public ResponseEntity<?> testStoryPrompt() {
+    public ResponseEntity<?> testStoryPrompt(@RequestParam(required = false) String version) {
         log.info("Testing with REALISTIC story generation prompt...");
 
         Instant start = Instant.now();
 
         try {
-            String storyPrompt = """
-                    Bạn là một nhà văn chuyên viết truyện cho trẻ em từ 5-12 tuổi.
-
-                    **Nhiệm vụ:** Viết một câu chuyện ngắn khoảng 300-400 từ dựa trên ý tưởng của trẻ.
-
-                    **Ý tưởng của trẻ:** A princess fighting a scary monster
-
-                    **Tâm trạng/Cảm xúc:** Scary
-
-                    **Yêu cầu:**
-                    1. Nội dung phải phù hợp với trẻ em, tích cực, lạc quan
-                    2. Ngôn ngữ đơn giản, dễ hiểu
-                    3. Có bài học ý nghĩa (tình bạn, lòng dũng cảm, sự tốt bụng, v.v.)
-                    4. Kết thúc có hậu
-                    5. Tránh nội dung bạo lực, đáng sợ hoặc không phù hợp
-
-                    Hãy viết câu chuyện theo định dạng JSON:
-                    {
-                      "title": "Tiêu đề câu chuyện",
-                      "content": "Nội dung câu chuyện đầy đủ",
-                      "moral": "Bài học rút ra"
-                    }
-                    """;
+            String storyPrompt = storyPrompt(version, "A princess fighting a scary monster", "Scary");
 
             String response = chatClient.prompt(storyPrompt).call().content();
 
@@ -201,6 +161,14 @@ public class TestController {
         }
     }
 
+    // Without a version, renders whatever the configuration currently selects
+    private String storyPrompt(String version, String userPrompt, String mood) {
+        Map<String, Object> model = Map.of("userPrompt", userPrompt, "mood", mood);
+        return version != null
+                ? promptRegistry.render(PromptRegistry.STORY, version, model).text()
+                : promptRegistry.render(PromptRegistry.STORY, model).text();
+    }
+
     @GetMapping("/ping")
     public ResponseEntity<?> ping() {
         return ResponseEntity.ok(Map.of("status", "pong", "timestamp", System.currentTimeMillis()));
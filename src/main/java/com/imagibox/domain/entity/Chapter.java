@@ -1,5 +1,6 @@
 package com.imagibox.domain.entity;
 
+import com.imagibox.domain.enums.ImageStatus;
 import io.hypersistence.utils.hibernate.type.json.JsonBinaryType;
 import jakarta.persistence.*;
 import lombok.*;
@@ -47,6 +48,11 @@ public class Chapter {
     @Column(name = "original_sketch_url", length = 500)
     private String originalSketchUrl;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "image_status", nullable = false, length = 20)
+    @Builder.Default
+    private ImageStatus imageStatus = ImageStatus.PENDING;
+
     @Type(JsonBinaryType.class)
     @Column(columnDefinition = "jsonb")
     private Map<String, Object> choices;
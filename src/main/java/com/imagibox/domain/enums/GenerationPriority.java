@@ -0,0 +1,7 @@
+package com.imagibox.domain.enums;
+
+public enum GenerationPriority {
+    INTERACTIVE,
+    ONE_SHOT,
+    BACKGROUND
+}
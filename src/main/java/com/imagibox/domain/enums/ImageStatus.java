@@ -0,0 +1,7 @@
+package com.imagibox.domain.enums;
+
+public enum ImageStatus {
+    PENDING,
+    READY,
+    FAILED
+}
@@ -0,0 +1,8 @@
+package com.imagibox.domain.enums;
+
+public enum JobStatus {
+    PENDING,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
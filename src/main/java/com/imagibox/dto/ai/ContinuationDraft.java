@@ -0,0 +1,19 @@
+package com.imagibox.dto.ai;
+
+import com.imagibox.util.StreamingJsonFieldReader;
+
+/**
+ * Structured output of the chapter-continuation prompt. The scene is a short
+ * English description of the chapter's key moment, used as the image prompt.
+ */
+public record ContinuationDraft(String content, String choiceA, String choiceB, String scene) {
+
+    public static ContinuationDraft parse(CharSequence response) {
+        return from(StreamingJsonFieldReader.read(response), response);
+    }
+
+    public static ContinuationDraft from(StreamingJsonFieldReader reader, CharSequence response) {
+        return new ContinuationDraft(Drafts.content(reader, response), reader.get("choiceA"), reader.get("choiceB"),
+                reader.get("scene"));
+    }
+}
@@ -0,0 +1,24 @@
+package com.imagibox.dto.ai;
+
+import com.imagibox.util.StreamingJsonFieldReader;
+
+final class Drafts {
+
+    private Drafts() {
+    }
+
+    /**
+     * The "content" field, or the whole response when the model answered in plain
+     * text instead of JSON. A JSON answer without content is an error.
+     */
+    static String content(StreamingJsonFieldReader reader, CharSequence response) {
+        String content = reader.get("content");
+        if (content != null) {
+            return content;
+        }
+        if (!reader.hasObject()) {
+            return response.toString().trim();
+        }
+        throw new IllegalStateException("AI response has no content field");
+    }
+}
@@ -0,0 +1,18 @@
+package com.imagibox.dto.ai;
+
+import com.imagibox.util.StreamingJsonFieldReader;
+
+/**
+ * Structured output of the first-chapter prompt of an interactive story.
+ */
+public record InteractiveChapterDraft(String title, String content, String choiceA, String choiceB) {
+
+    public static InteractiveChapterDraft parse(CharSequence response) {
+        return from(StreamingJsonFieldReader.read(response), response);
+    }
+
+    public static InteractiveChapterDraft from(StreamingJsonFieldReader reader, CharSequence response) {
+        return new InteractiveChapterDraft(reader.get("title"), Drafts.content(reader, response),
+                reader.get("choiceA"), reader.get("choiceB"));
+    }
+}
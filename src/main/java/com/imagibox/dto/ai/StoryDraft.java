@@ -0,0 +1,17 @@
+package com.imagibox.dto.ai;
+
+import com.imagibox.util.StreamingJsonFieldReader;
+
+/**
+ * Structured output of the one-shot story prompt.
+ */
+public record StoryDraft(String title, String content, String moral) {
+
+    public static StoryDraft parse(CharSequence response) {
+        return from(StreamingJsonFieldReader.read(response), response);
+    }
+
+    public static StoryDraft from(StreamingJsonFieldReader reader, CharSequence response) {
+        return new StoryDraft(reader.get("title"), Drafts.content(reader, response), reader.get("moral"));
+    }
+}
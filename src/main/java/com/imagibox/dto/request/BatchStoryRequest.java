@@ -0,0 +1,22 @@
+package com.imagibox.dto.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchStoryRequest {
+
+    @NotEmpty(message = "At least one story is required")
+    @Size(max = 20, message = "A batch can contain at most 20 stories")
+    private List<@Valid BatchStoryItem> items;
+}
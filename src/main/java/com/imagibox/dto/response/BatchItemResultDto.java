@@ -0,0 +1,19 @@
+package com.imagibox.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchItemResultDto {
+
+    private int index;
+    private Long kidId;
+    private String status;
+    private StoryResponseDto story;
+    private String error;
+}
@@ -19,6 +19,7 @@ public class ChapterResponseDto {
     private Map<String, Object> content;
     private String imageUrl;
     private String originalSketchUrl;
+    private String imageStatus;
     private String moodTag;
     private Map<String, Object> choices;
     private OffsetDateTime createdAt;
@@ -18,4 +18,7 @@ public class DashboardResponseDto {
     private Double avgChaptersPerStory;
     private Map<String, Long> moodDistribution;
     private Map<String, Object> activitySummary;
+    private TokenUsageDto tokenUsageToday;
+    private TokenUsageDto tokenUsageThisWeek;
+    private Map<Long, TokenUsageDto> tokenUsageThisWeekByKid;
 }
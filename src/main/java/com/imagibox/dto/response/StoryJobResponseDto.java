@@ -0,0 +1,23 @@
+package com.imagibox.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoryJobResponseDto {
+
+    private String jobId;
+    private String mode;
+    private String status;
+    private StoryResponseDto story;
+    private String error;
+    private OffsetDateTime createdAt;
+    private OffsetDateTime updatedAt;
+}
@@ -0,0 +1,19 @@
+package com.imagibox.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenUsageDto {
+
+    private Long promptTokens;
+    private Long completionTokens;
+    private Long totalTokens;
+    private Long calls;
+    private Double costUnits;
+}
@@ -0,0 +1,7 @@
+package com.imagibox.exception;
+
+public class BatchInProgressException extends RuntimeException {
+    public BatchInProgressException(String message) {
+        super(message);
+    }
+}
@@ -1,6 +1,7 @@
 package com.imagibox.exception;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -60,6 +61,61 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(error);
     }
 
+    @ExceptionHandler(IdempotencyConflictException.class)
+    public ResponseEntity<ErrorResponse> handleIdempotencyConflictException(IdempotencyConflictException ex) {
+        log.warn("Idempotency conflict: {}", ex.getMessage());
+        ErrorResponse error = ErrorResponse.builder()
+                .message(ex.getMessage())
+                .status(HttpStatus.CONFLICT.value())
+                .timestamp(OffsetDateTime.now())
+                .build();
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+    }
+
+    @ExceptionHandler(JobLimitExceededException.class)
+    public ResponseEntity<ErrorResponse> handleJobLimitExceededException(JobLimitExceededException ex) {
+        log.warn("Too many pending jobs: {}", ex.getMessage());
+        ErrorResponse error = ErrorResponse.builder()
+                .message("Bé đang chờ khá nhiều truyện rồi, đợi các truyện đó xong rồi tạo tiếp nhé!")
+                .status(HttpStatus.TOO_MANY_REQUESTS.value())
+                .timestamp(OffsetDateTime.now())
+                .build();
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(error);
+    }
+
+    @ExceptionHandler(BatchInProgressException.class)
+    public ResponseEntity<ErrorResponse> handleBatchInProgressException(BatchInProgressException ex) {
+        log.warn("Batch already running: {}", ex.getMessage());
+        ErrorResponse error = ErrorResponse.builder()
+                .message("Các truyện trước vẫn đang được tạo, bố mẹ chờ một chút nhé!")
+                .status(HttpStatus.CONFLICT.value())
+                .timestamp(OffsetDateTime.now())
+                .build();
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+    }
+
+    @ExceptionHandler({TaskRejectedException.class, ProviderBusyException.class})
+    public ResponseEntity<ErrorResponse> handleTaskRejectedException(RuntimeException ex) {
+        log.warn("Generation capacity exhausted: {}", ex.getMessage());
+        ErrorResponse error = ErrorResponse.builder()
+                .message("Hệ thống đang bận, bé thử lại sau ít phút nhé!")
+                .status(HttpStatus.SERVICE_UNAVAILABLE.value())
+                .timestamp(OffsetDateTime.now())
+                .build();
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(error);
+    }
+
+    @ExceptionHandler(DeadlineExceededException.class)
+    public ResponseEntity<ErrorResponse> handleDeadlineExceededException(DeadlineExceededException ex) {
+        log.warn("Generation deadline exceeded: {}", ex.getMessage());
+        ErrorResponse error = ErrorResponse.builder()
+                .message("Truyện đang được viết lâu hơn dự kiến, bé thử lại sau nhé!")
+                .status(HttpStatus.GATEWAY_TIMEOUT.value())
+                .timestamp(OffsetDateTime.now())
+                .build();
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(error);
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<ErrorResponse> handleValidationExceptions(MethodArgumentNotValidException ex) {
         Map<String, String> errors = new HashMap<>();
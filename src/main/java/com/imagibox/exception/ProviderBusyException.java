@@ -0,0 +1,7 @@
+package com.imagibox.exception;
+
+public class ProviderBusyException extends RuntimeException {
+    public ProviderBusyException(String message) {
+        super(message);
+    }
+}
@@ -1,11 +1,14 @@
 package com.imagibox.repository;
 
 import com.imagibox.domain.entity.Chapter;
+import com.imagibox.domain.enums.ImageStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,6 +17,10 @@ public interface ChapterRepository extends JpaRepository<Chapter, Long> {
 
     List<Chapter> findByStoryIdOrderByChapterNumberAsc(Long storyId);
 
+    List<Chapter> findByStoryIdAndChapterNumberGreaterThanOrderByChapterNumberAsc(Long storyId, Integer chapterNumber);
+
+    List<Chapter> findByStoryIdAndChapterNumberBetweenOrderByChapterNumberAsc(Long storyId, Integer from, Integer to);
+
     Optional<Chapter> findByStoryIdAndChapterNumber(Long storyId, Integer chapterNumber);
 
     @Query("SELECT MAX(c.chapterNumber) FROM Chapter c WHERE c.story.id = :storyId")
@@ -21,4 +28,15 @@ public interface ChapterRepository extends JpaRepository<Chapter, Long> {
 
     @Query("SELECT COUNT(c) FROM Chapter c WHERE c.story.id = :storyId")
     long countByStoryId(@Param("storyId") Long storyId);
+
+    /**
+     * Moves chapters created before the cutoff from one image status to another.
+     * Returns the number of rows updated.
+     */
+    @Modifying
+    @Query("UPDATE Chapter c SET c.imageStatus = :to WHERE c.imageStatus = :from AND c.createdAt < :cutoff")
+    int updateImageStatusCreatedBefore(
+            @Param("from") ImageStatus from,
+            @Param("to") ImageStatus to,
+            @Param("cutoff") OffsetDateTime cutoff);
 }
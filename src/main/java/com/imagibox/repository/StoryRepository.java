@@ -6,6 +6,7 @@ import com.imagibox.domain.enums.StoryStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -36,4 +37,23 @@ public interface StoryRepository extends JpaRepository<Story, Long> {
     @Query("SELECT COUNT(s) FROM Story s WHERE s.user.id IN :userIds")
     long countByUserIdIn(@Param("userIds") List<Long> userIds);
 
+    /**
+     * Sets only the summary keys of the metadata, and only if the stored summary covers fewer chapters.
+     * Returns the number of rows updated.
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE stories
+            SET metadata = COALESCE(metadata, CAST('{}' AS jsonb)) || jsonb_build_object(
+                    'summary', CAST(:summary AS text),
+                    'summarizedThrough', CAST(:summarizedThrough AS integer)),
+                updated_at = now()
+            WHERE id = :storyId
+              AND COALESCE(CAST(metadata ->> 'summarizedThrough' AS integer), 0) < :summarizedThrough
+            """, nativeQuery = true)
+    int updateSummary(
+            @Param("storyId") Long storyId,
+            @Param("summary") String summary,
+            @Param("summarizedThrough") int summarizedThrough);
+
 }
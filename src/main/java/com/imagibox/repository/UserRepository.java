@@ -27,4 +27,7 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     @Query("SELECT u FROM User u WHERE u.role = 'KID' AND u.parent.id = :parentId")
     List<User> findAllKidsByParent(@Param("parentId") Long parentId);
+
+    @Query("SELECT COALESCE(p.id, u.id) FROM User u LEFT JOIN u.parent p WHERE u.id = :userId")
+    Optional<Long> findFamilyIdByUserId(@Param("userId") Long userId);
 }
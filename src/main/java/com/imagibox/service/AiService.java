@@ -1,13 +1,25 @@
 package com.imagibox.service;
 
+import com.imagibox.concurrent.BudgetedRetry;
+import com.imagibox.concurrent.GenerationContext;
+import com.imagibox.concurrent.ProviderBulkheads;
+import com.imagibox.dto.ai.ContinuationDraft;
+import com.imagibox.dto.ai.InteractiveChapterDraft;
+import com.imagibox.dto.ai.StoryDraft;
+import com.imagibox.service.PromptRegistry.RenderedPrompt;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 @RequiredArgsConstructor
@@ -15,160 +27,172 @@ import java.util.Map;
 public class AiService {
 
     private final ChatClient chatClient;
-
-    private static final String STORY_GENERATION_TEMPLATE = """
-            Bạn là một nhà văn chuyên viết truyện cho trẻ em từ 5-12 tuổi.
-
-            **Nhiệm vụ:** Viết một câu chuyện ngắn khoảng 300-400 từ dựa trên ý tưởng của trẻ.
-
-            **Ý tưởng của trẻ:** {userPrompt}
-
-            **Tâm trạng/Cảm xúc:** {mood}
-
-            **Yêu cầu:**
-            1. Nội dung phải phù hợp với trẻ em, tích cực, lạc quan
-            2. Ngôn ngữ đơn giản, dễ hiểu
-            3. Có bài học ý nghĩa (tình bạn, lòng dũng cảm, sự tốt bụng, v.v.)
-            4. Kết thúc có hậu
-            5. Tránh nội dung bạo lực, đáng sợ hoặc không phù hợp
-
-            Hãy viết câu chuyện theo định dạng JSON:
-            {{
-              "title": "Tiêu đề câu chuyện",
-              "content": "Nội dung câu chuyện đầy đủ",
-              "moral": "Bài học rút ra"
-            }}
-            """;
-
-    private static final String INTERACTIVE_FIRST_CHAPTER_TEMPLATE = """
-            Bạn là một nhà văn chuyên viết truyện tương tác cho trẻ em.
-
-            **Chủ đề:** {userPrompt}
-            **Tâm trạng:** {mood}
-
-            **Nhiệm vụ:** Viết CHƯƠNG ĐẦU TIÊN (200-300 từ) của một câu chuyện tương tác.
-            QUAN TRỌNG: Đây chỉ là phần MỞ ĐẦU, KHÔNG phải câu chuyện hoàn chỉnh!
-
-            **Yêu cầu:**
-            1. Giới thiệu nhân vật chính và bối cảnh
-            2. Tạo ra tình huống ban đầu thú vị
-            3. KẾT THÚC ở một điểm quyết định (cliffhanger)
-            4. KHÔNG giải quyết vấn đề - để trẻ quyết định điều gì xảy ra tiếp theo
-            5. Cuối chương đưa ra 2 lựa chọn (A và B) cho nhân vật
-
-            Hãy viết theo định dạng JSON:
-            {{
-              "title": "Tiêu đề câu chuyện",
-              "content": "Nội dung chương 1 - CHỈ PHẦN MỞ ĐẦU, không kết thúc",
-              "choiceA": "Lựa chọn A - Mô tả ngắn gọn",
-              "choiceB": "Lựa chọn B - Mô tả ngắn gọn"
-            }}
-            """;
-
-    private static final String CHAPTER_CONTINUATION_TEMPLATE = """
-            Bạn là một nhà văn chuyên viết truyện cho trẻ em.
-
-            **Bối cảnh truyện trước đó:**
-            {context}
-
-            **Lựa chọn của trẻ:** {userChoice}
-
-            **Nhiệm vụ:** Viết tiếp chương kế tiếp (khoảng 200-300 từ) dựa trên lựa chọn của trẻ.
-
-            **Yêu cầu:**
-            1. Nội dung phải phù hợp với trẻ em
-            2. Tiếp nối mạch truyện một cách tự nhiên
-            3. Cuối chương đưa ra 2 lựa chọn mới (A và B) để trẻ quyết định
-
-            Hãy trả lời theo định dạng JSON:
-            {{
-              "content": "Nội dung chương mới",
-              "choiceA": "Lựa chọn A - Mô tả ngắn gọn",
-              "choiceB": "Lựa chọn B - Mô tả ngắn gọn"
-            }}
-            """;
-
-    private static final String IMAGE_PROMPT_TEMPLATE = """
-            Describe a beautiful children's book illustration based on: {userPrompt}
-            Mood: {mood}
-
-            Write a detailed visual description (150-300 words) for AI image generation.
-
-            Include:
-            - Style: professional children's book art, Disney Pixar style, vibrant colors
-            - Characters: cute, expressive, detailed features
-            - Setting: detailed environment and background
-            - Lighting: warm, studio quality matching {mood} mood
-            - Quality: polished, masterpiece, smooth digital painting
-
-            Describe ONLY the final polished result, not the sketch. Keep it under 300 words.
-            Here is an example response:
-            "transform this rough sketch into a professional children's book illustration, Princess Cinderella traveling and bravely beating a scary monster, Disney Pixar style, 3D rendered look, studio lighting, vibrant colors, smooth digital painting, highly detailed, polished, colorful, masterpiece quality, cute friendly character design, scary mood and atmosphere, dark enchanted forest background with glowing eyes, digital art, clean lines, professional coloring, 8k resolution".
-            """;
-
-    public Map<String, String> generateStory(String userPrompt, String mood) {
+    private final ProviderBulkheads providerBulkheads;
+    private final BudgetedRetry geminiTextRetry;
+    private final ResponseCacheService responseCacheService;
+    private final SimilarPromptService similarPromptService;
+    private final PromptRegistry promptRegistry;
+    private final TokenUsageService tokenUsageService;
+    private final MeterRegistry meterRegistry;
+
+    public StoryDraft generateStory(String userPrompt, String mood) {
         log.info("Generating story with prompt: {} and mood: {}", userPrompt, mood);
 
-        PromptTemplate promptTemplate = new PromptTemplate(STORY_GENERATION_TEMPLATE);
-        Prompt prompt = promptTemplate.create(Map.of(
-                "userPrompt", userPrompt,
-                "mood", mood != null ? mood : "Vui vẻ"));
-
-        String response = chatClient.prompt(prompt).call().content();
+        RenderedPrompt prompt = storyPrompt(userPrompt, mood);
+        String response = responseCacheService.get("story", prompt.source(), String.class,
+                () -> call(prompt),
+                userPrompt, mood);
         log.debug("AI response: {}", response);
 
-        return parseJsonResponse(response);
+        return StoryDraft.parse(response);
     }
 
-    public Map<String, String> generateInteractiveFirstChapter(String userPrompt, String mood) {
-        log.info("Generating interactive first chapter with prompt: {} and mood: {}", userPrompt, mood);
+    public Flux<String> streamStory(String userPrompt, String mood) {
+        log.info("Streaming story with prompt: {} and mood: {}", userPrompt, mood);
+        return stream(storyPrompt(userPrompt, mood));
+    }
 
-        PromptTemplate promptTemplate = new PromptTemplate(INTERACTIVE_FIRST_CHAPTER_TEMPLATE);
-        Prompt prompt = promptTemplate.create(Map.of(
-                "userPrompt", userPrompt,
-                "mood", mood != null ? mood : "Vui vẻ"));
+    public InteractiveChapterDraft generateInteractiveFirstChapter(String userPrompt, String mood) {
+        log.info("Generating interactive first chapter with prompt: {} and mood: {}", userPrompt, mood);
 
-        String response = chatClient.prompt(prompt).call().content();
+        String response = call(interactiveFirstChapterPrompt(userPrompt, mood));
         log.debug("AI response: {}", response);
 
-        return parseJsonResponse(response);
+        return InteractiveChapterDraft.parse(response);
+    }
+
+    public Flux<String> streamInteractiveFirstChapter(String userPrompt, String mood) {
+        log.info("Streaming interactive first chapter with prompt: {} and mood: {}", userPrompt, mood);
+        return stream(interactiveFirstChapterPrompt(userPrompt, mood));
     }
 
-    public Map<String, String> generateNextChapter(String context, String userChoice) {
+    public ContinuationDraft generateNextChapter(String context, String userChoice) {
         log.info("Generating next chapter with choice: {}", userChoice);
 
-        PromptTemplate promptTemplate = new PromptTemplate(CHAPTER_CONTINUATION_TEMPLATE);
-        Prompt prompt = promptTemplate.create(Map.of(
-                "context", context,
-                "userChoice", userChoice != null ? userChoice : "Tiếp tục phiêu lưu"));
+        String response = call(nextChapterPrompt(context, userChoice));
+        return ContinuationDraft.parse(response);
+    }
 
-        String response = chatClient.prompt(prompt).call().content();
-        return parseJsonResponse(response);
+    public Flux<String> streamNextChapter(String context, String userChoice) {
+        log.info("Streaming next chapter with choice: {}", userChoice);
+        return stream(nextChapterPrompt(context, userChoice));
     }
 
-    public String generateImagePrompt(String userPrompt, String mood) {
-        log.info("Generating image prompt for: {}", userPrompt);
+    public String summarizeStory(String previousSummary, String chapters) {
+        log.info("Updating story summary");
+
+        RenderedPrompt prompt = promptRegistry.render(PromptRegistry.STORY_SUMMARY, Map.of(
+                "summary", previousSummary != null ? previousSummary : "(Chưa có)",
+                "chapters", chapters));
 
-        PromptTemplate promptTemplate = new PromptTemplate(IMAGE_PROMPT_TEMPLATE);
-        Prompt prompt = promptTemplate.create(Map.of(
+        return call(prompt).trim();
+    }
+
+    public String generateImagePrompt(String userPrompt, String mood) {
+        RenderedPrompt prompt = promptRegistry.render(PromptRegistry.IMAGE_PROMPT, Map.of(
                 "userPrompt", userPrompt,
                 "mood", mood != null ? mood : "Happy"));
 
-        return chatClient.prompt(prompt).call().content().trim();
+        return responseCacheService.get("image-prompt", prompt.source(), String.class, () -> {
+            // No exact match; a near-duplicate prompt's description is good enough for the picture
+            Optional<String> similar = similarPromptService.find(SimilarPromptService.IMAGE_PROMPT, userPrompt, mood);
+            if (similar.isPresent()) {
+                return similar.get();
+            }
+
+            log.info("Generating image prompt for: {}", userPrompt);
+
+            String imagePrompt = call(prompt).trim();
+            similarPromptService.record(SimilarPromptService.IMAGE_PROMPT, userPrompt, mood, imagePrompt);
+            return imagePrompt;
+        }, userPrompt, mood);
     }
 
-    private Map<String, String> parseJsonResponse(String response) {
-        // TODO: this is kinda hacky, should probably use proper JSON parsing here
+    /**
+     * Turns the scene a chapter response already carries into an image prompt,
+     * without another model call.
+     */
+    public String sceneImagePrompt(String scene, String mood) {
+        return promptRegistry.render(PromptRegistry.SCENE_IMAGE_PROMPT, Map.of(
+                "scene", scene,
+                "mood", mood != null ? mood : "Happy")).text();
+    }
+
+    private RenderedPrompt storyPrompt(String userPrompt, String mood) {
+        return promptRegistry.render(PromptRegistry.STORY, Map.of(
+                "userPrompt", userPrompt,
+                "mood", mood != null ? mood : "Vui vẻ"));
+    }
+
+    private RenderedPrompt interactiveFirstChapterPrompt(String userPrompt, String mood) {
+        return promptRegistry.render(PromptRegistry.INTERACTIVE_FIRST_CHAPTER, Map.of(
+                "userPrompt", userPrompt,
+                "mood", mood != null ? mood : "Vui vẻ"));
+    }
+
+    private RenderedPrompt nextChapterPrompt(String context, String userChoice) {
+        return promptRegistry.render(PromptRegistry.CHAPTER_CONTINUATION, Map.of(
+                "context", context,
+                "userChoice", userChoice != null ? userChoice : "Tiếp tục phiêu lưu"));
+    }
+
+    // Retries wrap the bulkhead so a backoff never holds a permit.
+    // Latency is tagged with the template version so prompt variants can be compared.
+    private String call(RenderedPrompt prompt) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
         try {
-            String cleaned = response.trim()
-                    .replaceAll("```json\\s*", "")
-                    .replaceAll("```\\s*", "")
-                    .trim();
-
-            return Map.of("raw", cleaned);
-        } catch (Exception e) {
-            log.error("Failed to parse AI response", e);
-            throw new RuntimeException("Failed to parse AI response: " + e.getMessage());
+            ChatResponse response = geminiTextRetry.call(() -> providerBulkheads.geminiText()
+                    .execute(() -> chatClient.prompt(prompt.toPrompt()).call().chatResponse()));
+            tokenUsageService.record(GenerationContext.user(), GenerationContext.family(),
+                    prompt.name(), prompt.version(), response.getMetadata().getUsage());
+            outcome = "success";
+            return contentOf(response);
+        } finally {
+            sample.stop(promptTimer(prompt, "call", outcome));
         }
     }
+
+    // Usage comes with the last chunk (stream-usage), and termination runs on a reactor
+    // thread, so the user and family are captured when the stream is subscribed.
+    // A retry resubscribes to the bulkhead stream from a reactor timer thread; the bulkhead
+    // waits for its permit on timers there, against the deadline captured at assembly.
+    private Flux<String> stream(RenderedPrompt prompt) {
+        return Flux.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            Long userId = GenerationContext.user();
+            Long familyId = GenerationContext.family();
+            AtomicReference<Usage> usage = new AtomicReference<>();
+
+            return geminiTextRetry.stream(providerBulkheads.geminiText()
+                            .stream(() -> chatClient.prompt(prompt.toPrompt()).stream().chatResponse()))
+                    .doOnNext(response -> {
+                        Usage chunkUsage = response.getMetadata().getUsage();
+                        if (chunkUsage != null && chunkUsage.getTotalTokens() != null
+                                && chunkUsage.getTotalTokens() > 0) {
+                            usage.set(chunkUsage);
+                        }
+                    })
+                    .mapNotNull(AiService::contentOf)
+                    .doFinally(signal -> {
+                        // Tokens already streamed are billed even when the stream fails or the client leaves
+                        tokenUsageService.record(userId, familyId, prompt.name(), prompt.version(), usage.get());
+                        String outcome = switch (signal) {
+                            case ON_COMPLETE -> "success";
+                            case CANCEL -> "cancelled";
+                            default -> "error";
+                        };
+                        sample.stop(promptTimer(prompt, "stream", outcome));
+                    });
+        });
+    }
+
+    private static String contentOf(ChatResponse response) {
+        return response.getResult() != null ? response.getResult().getOutput().getContent() : null;
+    }
+
+    private Timer promptTimer(RenderedPrompt prompt, String mode, String outcome) {
+        return meterRegistry.timer("imagibox.prompt.latency",
+                "template", prompt.name(), "version", prompt.version(), "mode", mode, "outcome", outcome);
+    }
 }
@@ -1,6 +1,7 @@
 package com.imagibox.service;
 
 import com.imagibox.dto.response.DashboardResponseDto;
+import com.imagibox.dto.response.TokenUsageDto;
 import com.imagibox.repository.ChapterRepository;
 import com.imagibox.repository.MoodTagRepository;
 import com.imagibox.repository.StoryRepository;
@@ -12,10 +13,12 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
 import java.time.OffsetDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -27,12 +30,19 @@ public class AnalyticsService {
     private final ChapterRepository chapterRepository;
     private final MoodTagRepository moodTagRepository;
     private final UserRepository userRepository;
+    private final TokenUsageService tokenUsageService;
 
     public DashboardResponseDto getDashboard(Long parentId) {
         log.info("Getting dashboard for parent {}", parentId);
 
         List<Long> kidIds = userRepository.findKidIdByParentId(parentId);
 
+        // Token usage is kept per family and per kid, for the last 7 days including today
+        LocalDate today = LocalDate.now();
+        LocalDate weekStart = today.minusDays(6);
+        TokenUsageDto tokenUsageToday = tokenUsageService.familyUsage(parentId, today, today);
+        TokenUsageDto tokenUsageThisWeek = tokenUsageService.familyUsage(parentId, weekStart, today);
+
         // If no kids, return empty dashboard
         if (kidIds.isEmpty()) {
             return DashboardResponseDto.builder()
@@ -41,6 +51,9 @@ public class AnalyticsService {
                     .avgChaptersPerStory(0.0)
                     .moodDistribution(new HashMap<>())
                     .activitySummary(new HashMap<>())
+                    .tokenUsageToday(tokenUsageToday)
+                    .tokenUsageThisWeek(tokenUsageThisWeek)
+                    .tokenUsageThisWeekByKid(new HashMap<>())
                     .build();
         }
 
@@ -66,6 +79,11 @@ public class AnalyticsService {
                 .avgChaptersPerStory(avgChapters)
                 .moodDistribution(moodDistribution)
                 .activitySummary(activitySummary)
+                .tokenUsageToday(tokenUsageToday)
+                .tokenUsageThisWeek(tokenUsageThisWeek)
+                .tokenUsageThisWeekByKid(kidIds.stream()
+                        .collect(Collectors.toMap(Function.identity(),
+                                kidId -> tokenUsageService.userUsage(kidId, weekStart, today))))
                 .build();
     }
 
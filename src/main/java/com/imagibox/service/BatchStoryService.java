@@ -0,0 +1,246 @@
+package com.imagibox.service;
+
+import com.imagibox.concurrent.GenerationContext;
+import com.imagibox.domain.entity.User;
+import com.imagibox.domain.enums.GenerationPriority;
+import com.imagibox.domain.enums.JobStatus;
+import com.imagibox.dto.request.BatchStoryItem;
+import com.imagibox.dto.request.BatchStoryRequest;
+import com.imagibox.dto.request.GenerateStoryRequest;
+import com.imagibox.dto.response.BatchItemResultDto;
+import com.imagibox.exception.BatchInProgressException;
+import com.imagibox.exception.ContentUnsafeException;
+import com.imagibox.exception.UnauthorizedException;
+import com.imagibox.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Generates a batch of one-shot stories for a parent's kids. Quota for the whole
+ * batch is reserved up front; stories are generated by at most
+ * max-concurrency-per-family workers per family (one batch per family at a time,
+ * across all nodes, enforced by a lock in Redis) on a pool sized to the global
+ * limit, and each result is sent as an "item" event as soon as it finishes,
+ * followed by a final "done" event.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BatchStoryService {
+
+    private static final String LOCK_KEY_PREFIX = "batch:family:";
+
+    // Only the batch that took the lock may release it; an expired lock may already belong to another batch
+    private static final RedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final StoryService storyService;
+    private final UserRepository userRepository;
+    private final ContentSafetyService contentSafetyService;
+    private final RateLimitService rateLimitService;
+    private final TokenUsageService tokenUsageService;
+    private final EventStreamService eventStreamService;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Qualifier("batchExecutor")
+    private final TaskExecutor batchExecutor;
+
+    @Value("${imagibox.batch.max-concurrency-per-family:2}")
+    private int maxConcurrencyPerFamily;
+
+    @Value("${imagibox.batch.emitter-timeout:PT30M}")
+    private Duration emitterTimeout;
+
+    public SseEmitter generate(BatchStoryRequest request, Long parentId) {
+        List<BatchStoryItem> items = request.getItems();
+        Map<Long, User> kids = userRepository.findAllKidsByParent(parentId).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+
+        for (BatchStoryItem item : items) {
+            if (!kids.containsKey(item.getKidId())) {
+                throw new UnauthorizedException("You can only create stories for your own kids");
+            }
+        }
+
+        // Unsafe prompts fail on their own and do not use quota
+        List<BatchItemResultDto> rejected = new ArrayList<>();
+        Queue<Integer> accepted = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < items.size(); i++) {
+            try {
+                contentSafetyService.validatePrompt(items.get(i).getPrompt());
+                accepted.add(i);
+            } catch (ContentUnsafeException e) {
+                rejected.add(failed(i, items.get(i),
+                        "Hình như nội dung này không phù hợp cho bé. Hãy thử ý tưởng khác nhé! 🌈"));
+            }
+        }
+
+        // The lock outlives the batch's emitter at most, so a node dying mid-batch does not block the family
+        String lockToken = UUID.randomUUID().toString();
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                .setIfAbsent(LOCK_KEY_PREFIX + parentId, lockToken, emitterTimeout))) {
+            throw new BatchInProgressException("Family " + parentId + " already has a batch running");
+        }
+
+        try {
+            Map<Long, Integer> requested = accepted.stream()
+                    .collect(Collectors.groupingBy(i -> items.get(i).getKidId(), Collectors.summingInt(i -> 1)));
+            Map<Long, Integer> quotas = kids.values().stream()
+                    .collect(Collectors.toMap(User::getId, User::getDailyQuota));
+            requested.keySet().forEach(kidId -> tokenUsageService.checkQuota(kidId, parentId));
+            rateLimitService.checkAndIncrementQuotas(requested, quotas);
+        } catch (RuntimeException e) {
+            releaseLock(parentId, lockToken);
+            throw e;
+        }
+
+        log.info("Batch of {} stories ({} accepted) started for family {}", items.size(), accepted.size(), parentId);
+
+        SseEmitter emitter = new SseEmitter(emitterTimeout.toMillis());
+        rejected.forEach(result -> eventStreamService.sendLocal(emitter, "item", result, false));
+
+        BatchRun run = new BatchRun(parentId, lockToken, items, kids, accepted, emitter, rejected.size());
+        run.start(Math.min(maxConcurrencyPerFamily, accepted.size()));
+        return emitter;
+    }
+
+    private void releaseLock(Long parentId, String lockToken) {
+        try {
+            stringRedisTemplate.execute(RELEASE_LOCK_SCRIPT, List.of(LOCK_KEY_PREFIX + parentId), lockToken);
+        } catch (Exception e) {
+            // The lock expires with the emitter timeout anyway
+            log.warn("Failed to release batch lock of family {}", parentId, e);
+        }
+    }
+
+    private BatchItemResultDto failed(int index, BatchStoryItem item, String error) {
+        return BatchItemResultDto.builder()
+                .index(index)
+                .kidId(item.getKidId())
+                .status(JobStatus.FAILED.name())
+                .error(error)
+                .build();
+    }
+
+    private class BatchRun {
+
+        private final Long parentId;
+        private final String lockToken;
+        private final List<BatchStoryItem> items;
+        private final Map<Long, User> kids;
+        private final Queue<Integer> pending;
+        private final SseEmitter emitter;
+        private final AtomicInteger completed = new AtomicInteger();
+        private final AtomicInteger failed;
+        private final AtomicInteger activeWorkers = new AtomicInteger();
+
+        BatchRun(Long parentId, String lockToken, List<BatchStoryItem> items, Map<Long, User> kids,
+                Queue<Integer> pending, SseEmitter emitter, int alreadyFailed) {
+            this.parentId = parentId;
+            this.lockToken = lockToken;
+            this.items = items;
+            this.kids = kids;
+            this.pending = pending;
+            this.emitter = emitter;
+            this.failed = new AtomicInteger(alreadyFailed);
+        }
+
+        void start(int workers) {
+            if (workers == 0) {
+                finish();
+                return;
+            }
+
+            activeWorkers.set(workers);
+            for (int i = 0; i < workers; i++) {
+                try {
+                    batchExecutor.execute(this::work);
+                } catch (TaskRejectedException e) {
+                    log.warn("Batch pool is full, family {} runs with fewer workers", parentId);
+                    workerDone();
+                }
+            }
+        }
+
+        private void work() {
+            try (GenerationContext.Scope scope = GenerationContext.open(GenerationPriority.BACKGROUND, parentId)) {
+                Integer index;
+                while ((index = pending.poll()) != null) {
+                    BatchItemResultDto result = generate(index);
+                    eventStreamService.sendLocal(emitter, "item", result, false);
+                }
+            }
+            workerDone();
+        }
+
+        private BatchItemResultDto generate(int index) {
+            BatchStoryItem item = items.get(index);
+            GenerateStoryRequest request = GenerateStoryRequest.builder()
+                    .prompt(item.getPrompt())
+                    .mood(item.getMood())
+                    .mode("ONE_SHOT")
+                    .build();
+
+            try {
+                BatchItemResultDto result = BatchItemResultDto.builder()
+                        .index(index)
+                        .kidId(item.getKidId())
+                        .status(JobStatus.COMPLETED.name())
+                        .story(storyService.generateOneShot(request, null, kids.get(item.getKidId())))
+                        .build();
+                completed.incrementAndGet();
+                return result;
+            } catch (Exception e) {
+                log.error("Batch story {} for family {} failed", index, parentId, e);
+                failed.incrementAndGet();
+                return failed(index, item, "Có lỗi xảy ra. Vui lòng thử lại sau!");
+            }
+        }
+
+        private void workerDone() {
+            if (activeWorkers.decrementAndGet() > 0) {
+                return;
+            }
+
+            // Only non-empty when no worker could be scheduled; report it instead of hanging the stream
+            Integer index;
+            while ((index = pending.poll()) != null) {
+                failed.incrementAndGet();
+                eventStreamService.sendLocal(emitter, "item",
+                        failed(index, items.get(index), "Hệ thống đang bận, bố mẹ thử lại sau ít phút nhé!"), false);
+            }
+            finish();
+        }
+
+        private void finish() {
+            releaseLock(parentId, lockToken);
+            eventStreamService.sendLocal(emitter, "done",
+                    Map.of("completed", completed.get(), "failed", failed.get()), true);
+            log.info("Batch for family {} finished: {} completed, {} failed", parentId, completed.get(), failed.get());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.imagibox.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Fans server-sent events out to subscribers on every node.
+ * Events are published to a Redis channel so a client connected to one node
+ * still receives updates for work that finished on another.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EventStreamService implements MessageListener {
+
+    public static final String CHANNEL = "imagibox:events";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    @Value("${imagibox.events.emitter-timeout:PT5M}")
+    private Duration emitterTimeout;
+
+    public SseEmitter subscribe(String topic) {
+        SseEmitter emitter = new SseEmitter(emitterTimeout.toMillis());
+        List<SseEmitter> topicEmitters = emitters.computeIfAbsent(topic, key -> new CopyOnWriteArrayList<>());
+        topicEmitters.add(emitter);
+
+        Runnable remove = () -> removeEmitter(topic, emitter);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+        return emitter;
+    }
+
+    public void publish(String topic, String event, Object payload) {
+        publish(topic, event, payload, false);
+    }
+
+    public void publish(String topic, String event, Object payload, boolean last) {
+        try {
+            ObjectNode message = objectMapper.createObjectNode();
+            message.put("topic", topic);
+            message.put("event", event);
+            message.put("last", last);
+            message.set("payload", objectMapper.valueToTree(payload));
+            stringRedisTemplate.convertAndSend(CHANNEL, objectMapper.writeValueAsString(message));
+        } catch (Exception e) {
+            log.error("Failed to publish event {} on topic {}", event, topic, e);
+        }
+    }
+
+    /**
+     * Sends an event straight to this node's subscribers, skipping Redis.
+     * Used to replay the current state to a client that just subscribed.
+     */
+    public void sendLocal(SseEmitter emitter, String event, Object payload, boolean last) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name(event)
+                    .data(payload, MediaType.APPLICATION_JSON));
+            if (last) {
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Subscriber went away before event {} was sent", event);
+            emitter.completeWithError(e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            JsonNode node = objectMapper.readTree(new String(message.getBody(), StandardCharsets.UTF_8));
+            String topic = node.path("topic").asText();
+            List<SseEmitter> topicEmitters = emitters.get(topic);
+            if (topicEmitters == null || topicEmitters.isEmpty()) {
+                return;
+            }
+
+            String event = node.path("event").asText();
+            JsonNode payload = node.path("payload");
+            boolean last = node.path("last").asBoolean(false);
+            for (SseEmitter emitter : topicEmitters) {
+                sendLocal(emitter, event, payload, last);
+            }
+        } catch (Exception e) {
+            log.error("Failed to dispatch event from Redis", e);
+        }
+    }
+
+    private void removeEmitter(String topic, SseEmitter emitter) {
+        emitters.computeIfPresent(topic, (key, list) -> {
+            list.remove(emitter);
+            return list.isEmpty() ? null : list;
+        });
+    }
+}
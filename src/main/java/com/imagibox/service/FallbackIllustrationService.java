@@ -0,0 +1,49 @@
+package com.imagibox.service;
+
+import com.cloudinary.Cloudinary;
+import com.imagibox.config.FallbackIllustrationProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Picks a curated illustration for a mood when the image provider is unavailable.
+ * The same prompt always gets the same variant, so retries look consistent.
+ */
+@Service
+@RequiredArgsConstructor
+public class FallbackIllustrationService {
+
+    private final Cloudinary cloudinary;
+    private final FallbackIllustrationProperties properties;
+
+    public String pick(String mood, String prompt) {
+        String slug = slug(mood);
+        if (!properties.getMoods().contains(slug)) {
+            slug = properties.getDefaultMood();
+        }
+        int variant = 1 + Math.floorMod(prompt != null ? prompt.hashCode() : 0, properties.getVariants());
+        return cloudinary.url()
+                .secure(true)
+                .generate(properties.getFolder() + "/" + slug + "-" + variant);
+    }
+
+    /**
+     * "Phiêu lưu" becomes "phieu-luu".
+     */
+    static String slug(String mood) {
+        if (mood == null) {
+            return "";
+        }
+        return Normalizer.normalize(mood, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .replace('đ', 'd')
+                .replace('Đ', 'D')
+                .toLowerCase(Locale.ROOT)
+                .trim()
+                .replaceAll("[^a-z0-9]+", "-")
+                .replaceAll("(^-|-$)", "");
+    }
+}
@@ -0,0 +1,185 @@
+package com.imagibox.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.imagibox.exception.IdempotencyConflictException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Makes generation endpoints safe to retry with an Idempotency-Key header.
+ * The first request claims the key in Redis and stores its result there; replays
+ * wait for the in-flight request or get the stored response, without spending
+ * quota or calling the AI providers again.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IdempotencyService {
+
+    private static final String KEY_PREFIX = "idempotency:user:";
+    private static final String IN_PROGRESS = "IN_PROGRESS";
+    private static final String COMPLETED = "COMPLETED";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${imagibox.idempotency.in-progress-ttl:PT3M}")
+    private Duration inProgressTtl;
+
+    @Value("${imagibox.idempotency.result-ttl:P1D}")
+    private Duration resultTtl;
+
+    @Value("${imagibox.idempotency.replay-wait:PT2M}")
+    private Duration replayWait;
+
+    @Value("${imagibox.idempotency.poll-interval:PT0.5S}")
+    private Duration pollInterval;
+
+    private record IdempotencyRecord(String status, String fingerprint, String body) {
+    }
+
+    /**
+     * Runs the action once per (user, key). Without a key the action simply runs.
+     *
+     * @param fingerprint identifies the request payload; reusing a key for a different payload is rejected
+     */
+    public <T> T execute(Long userId, String idempotencyKey, String fingerprint, Class<T> responseType,
+            Supplier<T> action) {
+        return execute(userId, idempotencyKey, fingerprint, responseType, action, UnaryOperator.identity());
+    }
+
+    /**
+     * Like {@link #execute(Long, String, String, Class, Supplier)}, but passes a replayed response
+     * through {@code onReplay} first, for responses with parts that change after they are stored.
+     */
+    public <T> T execute(Long userId, String idempotencyKey, String fingerprint, Class<T> responseType,
+            Supplier<T> action, UnaryOperator<T> onReplay) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return action.get();
+        }
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key is too long");
+        }
+
+        String key = KEY_PREFIX + userId + ":" + idempotencyKey;
+        Instant waitUntil = Instant.now().plus(replayWait);
+
+        while (true) {
+            if (claim(key, fingerprint)) {
+                return runAndStore(key, fingerprint, responseType, action);
+            }
+
+            IdempotencyRecord existing = read(key);
+            if (existing == null) {
+                // The first request failed and released the key; take over
+                continue;
+            }
+            if (!fingerprint.equals(existing.fingerprint())) {
+                throw new IdempotencyConflictException(
+                        "Idempotency-Key này đã được dùng cho một yêu cầu khác!");
+            }
+            if (COMPLETED.equals(existing.status())) {
+                log.info("Replaying stored response for idempotency key {}", key);
+                return onReplay.apply(readBody(existing, responseType));
+            }
+            if (Instant.now().isAfter(waitUntil)) {
+                throw new IdempotencyConflictException("Yêu cầu này vẫn đang được xử lý, bé chờ thêm chút nhé!");
+            }
+            sleep();
+        }
+    }
+
+    /**
+     * Hashes the parts of a request that must match for a replay to be valid.
+     */
+    public String fingerprint(Object... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Object part : parts) {
+                byte[] bytes = part instanceof byte[] raw
+                        ? raw
+                        : String.valueOf(part).getBytes(StandardCharsets.UTF_8);
+                digest.update(bytes);
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private <T> T runAndStore(String key, String fingerprint, Class<T> responseType, Supplier<T> action) {
+        T result;
+        try {
+            result = action.get();
+        } catch (RuntimeException e) {
+            // Let a retry start over instead of replaying the failure
+            stringRedisTemplate.delete(key);
+            throw e;
+        }
+
+        try {
+            write(key, new IdempotencyRecord(COMPLETED, fingerprint, objectMapper.writeValueAsString(result)),
+                    resultTtl);
+        } catch (Exception e) {
+            log.error("Failed to store idempotent response under {}", key, e);
+            stringRedisTemplate.delete(key);
+        }
+        return result;
+    }
+
+    private boolean claim(String key, String fingerprint) {
+        try {
+            String value = objectMapper.writeValueAsString(new IdempotencyRecord(IN_PROGRESS, fingerprint, null));
+            return Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(key, value, inProgressTtl));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to claim idempotency key", e);
+        }
+    }
+
+    private IdempotencyRecord read(String key) {
+        String value = stringRedisTemplate.opsForValue().get(key);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(value, IdempotencyRecord.class);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read idempotency record", e);
+        }
+    }
+
+    private <T> T readBody(IdempotencyRecord record, Class<T> responseType) {
+        try {
+            return objectMapper.readValue(record.body(), responseType);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read stored response", e);
+        }
+    }
+
+    private void write(String key, IdempotencyRecord record, Duration ttl) throws Exception {
+        stringRedisTemplate.opsForValue().set(key, objectMapper.writeValueAsString(record), ttl);
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(pollInterval.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyConflictException("Yêu cầu này vẫn đang được xử lý, bé chờ thêm chút nhé!");
+        }
+    }
+}
@@ -7,17 +7,31 @@ import com.google.genai.types.Content;
 import com.google.genai.types.GenerateContentConfig;
 import com.google.genai.types.GenerateContentResponse;
 import com.google.genai.types.Part;
+import com.imagibox.concurrent.GenerationContext;
+import com.imagibox.concurrent.HedgedExecutor;
+import com.imagibox.concurrent.ProviderBulkheads;
+import com.imagibox.concurrent.SingleFlight;
 import com.imagibox.config.CloudinaryProperties;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
@@ -27,85 +41,218 @@ public class ImageService {
     private final Cloudinary cloudinary;
     private final CloudinaryProperties cloudinaryProperties;
     private final AiService aiService;
+    private final SingleFlight singleFlight;
+    private final ProviderBulkheads providerBulkheads;
+    private final SimilarPromptService similarPromptService;
+    private final HedgedExecutor geminiImageHedging;
+    private final CircuitBreaker geminiImageCircuitBreaker;
+    private final FallbackIllustrationService fallbackIllustrationService;
+
+    @Qualifier("taskExecutor")
+    private final Executor taskExecutor;
 
     @Value("${GEMINI_API_KEY}")
     private String geminiApiKey;
 
     public String uploadToCloudinary(MultipartFile file) throws IOException {
         log.info("Uploading image to Cloudinary: {}", file.getOriginalFilename());
+        return uploadToCloudinary(file.getBytes());
+    }
 
-        Map<String, Object> uploadResult = cloudinary.uploader().upload(
-                file.getBytes(),
+    public String uploadToCloudinary(byte[] bytes) throws IOException {
+        Map<String, Object> uploadResult = providerBulkheads.cloudinary().execute(() -> cloudinary.uploader().upload(
+                bytes,
                 ObjectUtils.asMap(
                         "folder", cloudinaryProperties.getFolder(),
-                        "resource_type", "auto"));
+                        "resource_type", "auto")));
 
         String url = (String) uploadResult.get("secure_url");
         log.info("Image uploaded successfully: {}", url);
         return url;
     }
 
-    @Async("taskExecutor")
-    public CompletableFuture<Map<String, String>> generateIllustration(MultipartFile sketch, String prompt,
-            String mood) {
-        log.info("Generating illustration from sketch: {}", sketch.getOriginalFilename());
+    /**
+     * Runs the illustration pipeline as composed stages: the sketch upload and
+     * the image-prompt call start immediately and independently, image generation
+     * follows the prompt, and the final upload follows generation.
+     *
+     * Identical concurrent requests (same normalized prompt and mood) share one
+     * image-prompt call, and without a sketch one whole text-to-image render.
+     *
+     * Every stage runs under the given deadline: a provider call still running
+     * at the deadline is cancelled and no later stage starts. Cancelling the
+     * returned future also stops later stages from starting; a shared render
+     * goes on while any other caller still waits for it.
+     *
+     * While the Gemini image circuit is open the illustration is a curated
+     * fallback for the mood, returned without calling any AI provider.
+     */
+    public CompletableFuture<Illustration> illustrate(String prompt, String mood, byte[] sketch, Instant deadline) {
+        boolean hasSketch = sketch != null && sketch.length > 0;
+        if (!hasSketch) {
+            Optional<String> similar = similarPromptService.find(SimilarPromptService.ILLUSTRATION, prompt, mood);
+            if (similar.isPresent()) {
+                return CompletableFuture.completedFuture(new Illustration(similar.get(), null));
+            }
+        }
+        log.info("Generating illustration ({}) for prompt: {}", hasSketch ? "sketch" : "text", prompt);
 
-        try {
-            // 1. Extract bytes from sketch
-            byte[] imageBytes = sketch.getBytes();
+        try (GenerationContext.Scope scope = GenerationContext.withDeadline(deadline)) {
+            CompletableFuture<Void> cancelled = new CompletableFuture<>();
+            BooleanSupplier abandoned = cancelled::isDone;
 
-            // 2. Upload original to Cloudinary for storage/reference
-            String sketchUrl = uploadToCloudinary(sketch);
+            CompletableFuture<String> sketchUrl = hasSketch
+                    ? CompletableFuture.supplyAsync(() -> unlessAbandoned(abandoned, () -> uploadSketch(sketch)),
+                            taskExecutor)
+                    : CompletableFuture.completedFuture(null);
 
-            // 3. Generate enhanced image prompt
-            String imagePrompt = aiService.generateImagePrompt(prompt, mood);
-            log.info("Image prompt length: {}", imagePrompt.length());
-            log.info("Image prompt: {}", imagePrompt);
+            if (isCircuitOpen()) {
+                String fallbackUrl = fallbackIllustrationService.pick(mood, prompt);
+                log.info("Image circuit is open, using fallback illustration {}", fallbackUrl);
+                return sketchUrl.thenApply(original -> new Illustration(fallbackUrl, original));
+            }
 
-            // 4. Call Gemini API for image-to-image generation
-            byte[] generatedImageBytes = callGeminiImageToImage(imageBytes, imagePrompt);
+            PromptKey key = new PromptKey(SingleFlight.normalize(prompt), SingleFlight.normalize(mood));
+            CompletableFuture<String> imageUrl = hasSketch
+                    ? render(imagePrompt(key, prompt, mood), sketch, abandoned)
+                    : singleFlight.execute("textToImage", key, shared ->
+                            render(imagePrompt(key, prompt, mood), null, shared).thenApply(url -> {
+                                similarPromptService.record(SimilarPromptService.ILLUSTRATION, prompt, mood, url);
+                                return url;
+                            }));
+
+            CompletableFuture<Illustration> illustration = imageUrl
+                    .exceptionally(e -> fallbackIfCircuitOpen(e, prompt, mood))
+                    .thenCombine(sketchUrl, (generated, original) -> {
+                log.info("Illustration generated successfully. Sketch: {}, Generated: {}", original, generated);
+                return new Illustration(generated, original);
+            });
+            return cancelUpstream(illustration, cancelled, imageUrl, sketchUrl);
+        }
+    }
 
-            // 5. Upload generated image to Cloudinary
-            @SuppressWarnings("unchecked")
-            Map<String, Object> uploadResult = cloudinary.uploader().upload(
-                    generatedImageBytes,
-                    ObjectUtils.asMap("folder", cloudinaryProperties.getFolder()));
-            String generatedImageUrl = (String) uploadResult.get("secure_url");
+    /**
+     * Illustrates a generated chapter. When the chapter response carried a scene
+     * description it is the image prompt as is, saving the image-prompt call
+     * that would otherwise re-read the whole chapter.
+     */
+    public CompletableFuture<Illustration> illustrateChapter(String content, String scene, String mood,
+            Instant deadline) {
+        if (scene == null || scene.isBlank()) {
+            return illustrate(content, mood, null, deadline);
+        }
+        log.info("Generating illustration from scene: {}", scene);
 
-            log.info("Illustration generated successfully. Sketch: {}, Generated: {}", sketchUrl, generatedImageUrl);
+        try (GenerationContext.Scope scope = GenerationContext.withDeadline(deadline)) {
+            if (isCircuitOpen()) {
+                return CompletableFuture.completedFuture(
+                        new Illustration(fallbackIllustrationService.pick(mood, scene), null));
+            }
+            CompletableFuture<Void> cancelled = new CompletableFuture<>();
+            CompletableFuture<String> imageUrl = render(
+                    CompletableFuture.supplyAsync(() -> aiService.sceneImagePrompt(scene, mood), taskExecutor),
+                    null, cancelled::isDone);
+            CompletableFuture<Illustration> illustration = imageUrl
+                    .exceptionally(e -> fallbackIfCircuitOpen(e, scene, mood))
+                    .thenApply(url -> new Illustration(url, null));
+            return cancelUpstream(illustration, cancelled, imageUrl);
+        }
+    }
 
-            // 6. Return both URLs
-            return CompletableFuture.completedFuture(Map.of(
-                    "sketchUrl", sketchUrl,
-                    "generatedUrl", generatedImageUrl));
-        } catch (Exception e) {
-            log.error("Failed to generate illustration", e);
-            return CompletableFuture.failedFuture(e);
+    /**
+     * Renders and uploads once the image prompt is ready, skipping either stage
+     * when the illustration has been abandoned by then.
+     */
+    private CompletableFuture<String> render(CompletableFuture<String> imagePrompt, byte[] sketch,
+            BooleanSupplier abandoned) {
+        return imagePrompt
+                .thenApplyAsync(prompt -> unlessAbandoned(abandoned, () -> renderImage(sketch, prompt)), taskExecutor)
+                .thenApplyAsync(bytes -> unlessAbandoned(abandoned, () -> uploadGeneratedImage(bytes)), taskExecutor);
+    }
+
+    private static <T> T unlessAbandoned(BooleanSupplier abandoned, Supplier<T> stage) {
+        if (abandoned.getAsBoolean()) {
+            throw new CancellationException("Illustration is no longer needed");
         }
+        return stage.get();
     }
 
-    @Async("taskExecutor")
-    public CompletableFuture<String> generateIllustrationFromText(String prompt, String mood) {
-        log.info("Generating illustration from text prompt: {}", prompt);
+    /**
+     * Cancelling a CompletableFuture does not reach the stages it depends on; this
+     * signals them through cancelled and cancels the upstream futures, so shared
+     * single-flight copies stop counting this caller.
+     */
+    private static <T> CompletableFuture<T> cancelUpstream(CompletableFuture<T> result,
+            CompletableFuture<Void> cancelled, CompletableFuture<?>... upstream) {
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                cancelled.complete(null);
+                for (CompletableFuture<?> future : upstream) {
+                    future.cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+
+    private boolean isCircuitOpen() {
+        CircuitBreaker.State state = geminiImageCircuitBreaker.getState();
+        return state == CircuitBreaker.State.OPEN || state == CircuitBreaker.State.FORCED_OPEN;
+    }
 
+    /**
+     * Calls rejected by the circuit (it opened mid-flight, or half-open probes are
+     * taken) also get the fallback; any other failure propagates.
+     */
+    private String fallbackIfCircuitOpen(Throwable error, String prompt, String mood) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof CallNotPermittedException) {
+            return fallbackIllustrationService.pick(mood, prompt);
+        }
+        throw error instanceof CompletionException completion ? completion : new CompletionException(cause);
+    }
+
+    private CompletableFuture<String> imagePrompt(PromptKey key, String prompt, String mood) {
+        return singleFlight.execute("imagePrompt", key,
+                () -> CompletableFuture.supplyAsync(() -> aiService.generateImagePrompt(prompt, mood), taskExecutor));
+    }
+
+    private record PromptKey(String prompt, String mood) {
+    }
+
+    private byte[] renderImage(byte[] sketch, String imagePrompt) {
         try {
-            String imagePrompt = aiService.generateImagePrompt(prompt, mood);
+            // Each attempt, hedge included, takes its own bulkhead permit
+            return geminiImageCircuitBreaker.executeCallable(() -> geminiImageHedging.execute(
+                    () -> providerBulkheads.geminiImage().execute(() -> sketch != null && sketch.length > 0
+                            ? callGeminiImageToImage(sketch, imagePrompt)
+                            : callGeminiTextToImage(imagePrompt))));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Image generation failed", e);
+        }
+    }
 
-            // Call Gemini API for text-to-image generation
-            byte[] generatedImageBytes = callGeminiTextToImage(imagePrompt);
+    private String uploadSketch(byte[] sketch) {
+        try {
+            return uploadToCloudinary(sketch);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-            // Upload to Cloudinary
+    private String uploadGeneratedImage(byte[] generatedImageBytes) {
+        try {
             @SuppressWarnings("unchecked")
-            Map<String, Object> uploadResult = cloudinary.uploader().upload(
+            Map<String, Object> uploadResult = providerBulkheads.cloudinary().execute(() -> cloudinary.uploader().upload(
                     generatedImageBytes,
-                    ObjectUtils.asMap("folder", cloudinaryProperties.getFolder()));
-            String generatedImageUrl = (String) uploadResult.get("secure_url");
-
-            log.info("Illustration generated successfully: {}", generatedImageUrl);
-            return CompletableFuture.completedFuture(generatedImageUrl);
-        } catch (Exception e) {
-            log.error("Failed to generate illustration", e);
-            return CompletableFuture.failedFuture(e);
+                    ObjectUtils.asMap("folder", cloudinaryProperties.getFolder())));
+            return (String) uploadResult.get("secure_url");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -169,9 +316,13 @@ public class ImageService {
         }
     }
 
+    public record Illustration(String imageUrl, String sketchUrl) {
+    }
+
     public void deleteImage(String publicId) {
         try {
-            cloudinary.uploader().destroy(publicId, ObjectUtils.emptyMap());
+            providerBulkheads.cloudinary().execute(
+                    () -> cloudinary.uploader().destroy(publicId, ObjectUtils.emptyMap()));
             log.info("Image deleted: {}", publicId);
         } catch (IOException e) {
             log.error("Failed to delete image: {}", publicId, e);
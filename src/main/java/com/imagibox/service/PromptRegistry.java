@@ -0,0 +1,178 @@
+package com.imagibox.service;
+
+import com.imagibox.config.PromptProperties;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Service;
+import org.stringtemplate.v4.ST;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Prompt templates loaded from prompts/{name}/{version}.st and compiled once at
+ * startup. Spring AI's PromptTemplate re-parses its text on every construction and
+ * mutates its compiled template on render, so each render here works on a cheap
+ * copy of a shared compiled prototype instead.
+ *
+ * Which version a template renders is configuration: a fixed version, or weights
+ * for an experiment, in which case the version is picked per render.
+ *
+ * Metrics: imagibox.prompt.size (characters) and imagibox.prompt.tokens
+ * (estimated), both tagged with template and version.
+ */
+@Service
+@Slf4j
+public class PromptRegistry {
+
+    public static final String STORY = "story";
+    public static final String INTERACTIVE_FIRST_CHAPTER = "interactive-first-chapter";
+    public static final String CHAPTER_CONTINUATION = "chapter-continuation";
+    public static final String STORY_SUMMARY = "story-summary";
+    public static final String IMAGE_PROMPT = "image-prompt";
+    public static final String SCENE_IMAGE_PROMPT = "scene-image-prompt";
+
+    private final PromptProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Map<String, Template>> templates = new HashMap<>();
+    private final Map<String, Selection> selections = new HashMap<>();
+
+    public record Template(String name, String version, String source, ST compiled) {
+    }
+
+    /**
+     * A rendered prompt; source is the template text, for cache keys that should
+     * change whenever the template does.
+     */
+    public record RenderedPrompt(String name, String version, String source, String text) {
+
+        public Prompt toPrompt() {
+            return new Prompt(text);
+        }
+    }
+
+    private record Selection(List<Template> versions, int[] cumulativeWeights) {
+
+        Template pick() {
+            if (versions.size() == 1) {
+                return versions.get(0);
+            }
+            int roll = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (roll < cumulativeWeights[i]) {
+                    return versions.get(i);
+                }
+            }
+            return versions.get(versions.size() - 1);
+        }
+    }
+
+    public PromptRegistry(PromptProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        load();
+        templates.keySet().forEach(name -> selections.put(name, select(name)));
+    }
+
+    public RenderedPrompt render(String name, Map<String, Object> model) {
+        return render(selection(name).pick(), model);
+    }
+
+    /**
+     * Renders a specific version regardless of configuration, e.g. to compare variants by hand.
+     */
+    public RenderedPrompt render(String name, String version, Map<String, Object> model) {
+        Template template = templates.getOrDefault(name, Map.of()).get(version);
+        if (template == null) {
+            throw new IllegalArgumentException("Unknown prompt template " + name + "@" + version);
+        }
+        return render(template, model);
+    }
+
+    private RenderedPrompt render(Template template, Map<String, Object> model) {
+        ST st = new ST(template.compiled());
+        model.forEach(st::add);
+        String text = st.render().trim();
+
+        DistributionSummary.builder("imagibox.prompt.size")
+                .baseUnit("characters")
+                .tags("template", template.name(), "version", template.version())
+                .register(meterRegistry)
+                .record(text.length());
+        DistributionSummary.builder("imagibox.prompt.tokens")
+                .tags("template", template.name(), "version", template.version())
+                .register(meterRegistry)
+                .record(Math.ceil(text.length() / properties.getCharsPerToken()));
+
+        return new RenderedPrompt(template.name(), template.version(), template.source(), text);
+    }
+
+    private Selection selection(String name) {
+        Selection selection = selections.get(name);
+        if (selection == null) {
+            throw new IllegalArgumentException("Unknown prompt template " + name);
+        }
+        return selection;
+    }
+
+    private void load() {
+        try {
+            Resource[] resources = new PathMatchingResourcePatternResolver().getResources(properties.getLocation());
+            for (Resource resource : resources) {
+                String path = resource.getURL().getPath();
+                String[] parts = path.split("/");
+                String name = parts[parts.length - 2];
+                String version = parts[parts.length - 1].replaceFirst("\\.st$", "");
+                String source = resource.getContentAsString(StandardCharsets.UTF_8);
+
+                templates.computeIfAbsent(name, n -> new HashMap<>())
+                        .put(version, new Template(name, version, source, new ST(source, '{', '}')));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load prompt templates from " + properties.getLocation(), e);
+        }
+        log.info("Loaded prompt templates: {}", templates.keySet());
+    }
+
+    // Fails startup on a misconfigured version rather than on the first generation
+    private Selection select(String name) {
+        Map<String, Integer> weights = properties.getExperiments().get(name);
+        if (weights == null || weights.isEmpty()) {
+            String version = properties.getVersions().getOrDefault(name, properties.getDefaultVersion());
+            return new Selection(List.of(version(name, version)), new int[] {1});
+        }
+
+        List<Template> versions = new ArrayList<>();
+        int[] cumulativeWeights = new int[weights.size()];
+        int total = 0;
+        for (Map.Entry<String, Integer> weight : weights.entrySet()) {
+            if (weight.getValue() <= 0) {
+                throw new IllegalStateException("Prompt experiment weight must be positive: " + name);
+            }
+            total += weight.getValue();
+            cumulativeWeights[versions.size()] = total;
+            versions.add(version(name, weight.getKey()));
+        }
+        log.info("Prompt experiment on {}: {}", name, weights);
+        return new Selection(versions, cumulativeWeights);
+    }
+
+    private Template version(String name, String version) {
+        Template template = templates.get(name).get(version);
+        if (template == null) {
+            throw new IllegalStateException("Prompt template " + name + " has no version " + version);
+        }
+        return template;
+    }
+}
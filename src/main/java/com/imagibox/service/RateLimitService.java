@@ -5,11 +5,16 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -17,6 +22,7 @@ import java.time.ZoneId;
 public class RateLimitService {
 
     private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
 
     @Value("${rate-limit.default-quota:10}")
     private int defaultQuota;
@@ -26,28 +32,70 @@ public class RateLimitService {
 
     private static final String QUOTA_KEY_PREFIX = "quota:user:";
 
+    // ARGV: expire seconds, then (requested, quota) per key. Returns the 1-based index of the first key
+    // over quota, or 0 once every key has been incremented
+    private static final RedisScript<Long> RESERVE_QUOTA_SCRIPT = new DefaultRedisScript<>("""
+            for i, key in ipairs(KEYS) do
+                local used = tonumber(redis.call('GET', key) or '0')
+                if used + tonumber(ARGV[2 * i]) > tonumber(ARGV[2 * i + 1]) then
+                    return i
+                end
+            end
+            for i, key in ipairs(KEYS) do
+                local requested = tonumber(ARGV[2 * i])
+                if redis.call('INCRBY', key, requested) == requested then
+                    redis.call('EXPIRE', key, ARGV[1])
+                end
+            end
+            return 0
+            """, Long.class);
+
     public void checkAndIncrementQuota(Long userId, int userQuota) {
-        String key = QUOTA_KEY_PREFIX + userId + ":" + LocalDate.now();
+        checkAndIncrementQuotas(Map.of(userId, 1), Map.of(userId, userQuota));
+    }
 
-        Integer currentUsage = (Integer) redisTemplate.opsForValue().get(key);
-        if (currentUsage == null) {
-            currentUsage = 0;
+    /**
+     * Checks every user's quota and only then reserves it, in one script, so a batch
+     * is either accepted as a whole or rejected without using any quota, and two
+     * concurrent requests cannot both pass the check for the last story.
+     */
+    public void checkAndIncrementQuotas(Map<Long, Integer> requested, Map<Long, Integer> userQuotas) {
+        List<Long> userIds = new ArrayList<>(requested.keySet());
+        List<String> keys = userIds.stream()
+                .map(userId -> QUOTA_KEY_PREFIX + userId + ":" + LocalDate.now())
+                .toList();
+
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(quotaExpireSeconds));
+        for (Long userId : userIds) {
+            args.add(String.valueOf(requested.get(userId)));
+            args.add(String.valueOf(userQuotas.get(userId)));
         }
 
-        if (currentUsage >= userQuota) {
-            log.warn("User {} exceeded daily quota: {}/{}", userId, currentUsage, userQuota);
+        Long overQuota = stringRedisTemplate.execute(RESERVE_QUOTA_SCRIPT, keys, args.toArray());
+        if (overQuota == null) {
+            throw new IllegalStateException("Quota script returned no result");
+        }
+        if (overQuota > 0) {
+            Long userId = userIds.get(overQuota.intValue() - 1);
+            log.warn("User {} would exceed daily quota: +{}/{}", userId, requested.get(userId),
+                    userQuotas.get(userId));
             throw new QuotaExceededException("Đã vượt quá số lượng truyện có thể tạo trong ngày!");
         }
 
-        // Increment usage
-        redisTemplate.opsForValue().increment(key);
+        log.info("Reserved quota: {}", requested);
+    }
 
-        // Set expiration to midnight next day
-        if (currentUsage == 0) {
-            redisTemplate.expire(key, Duration.ofSeconds(quotaExpireSeconds));
+    /**
+     * Gives back a story reserved by {@link #checkAndIncrementQuota} when the generation was never started.
+     */
+    public void refundQuota(Long userId) {
+        String key = QUOTA_KEY_PREFIX + userId + ":" + LocalDate.now();
+        Long usage = redisTemplate.opsForValue().decrement(key);
+        if (usage != null && usage < 0) {
+            redisTemplate.delete(key);
         }
-
-        log.info("User {} quota usage: {}/{}", userId, currentUsage + 1, userQuota);
+        log.info("Refunded quota for user {}", userId);
     }
 
     public int getRemainingQuota(Long userId, int userQuota) {
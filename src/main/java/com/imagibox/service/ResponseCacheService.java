@@ -0,0 +1,128 @@
+package com.imagibox.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.imagibox.concurrent.SingleFlight;
+import com.imagibox.config.ResponseCacheProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Two-tier exact-match cache for model responses: a size-bounded in-process
+ * Caffeine cache in front of Redis, so every node benefits from a response any
+ * node has paid for. Keys hash the prompt template with the normalized inputs,
+ * so editing a template naturally starts a fresh key space.
+ *
+ * Metrics: imagibox.cache.requests{namespace, result=l1|l2|miss}, plus the
+ * standard Caffeine cache metrics for each L1 cache.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ResponseCacheService {
+
+    private static final String KEY_PREFIX = "response-cache:";
+
+    private final ResponseCacheProperties properties;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Cache<String, Object>> localCaches = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the cached response for the template and inputs, calling the loader on a miss.
+     * Unconfigured or disabled namespaces always call the loader.
+     */
+    public <T> T get(String namespace, String template, Class<T> type, Supplier<T> loader, String... inputs) {
+        ResponseCacheProperties.Namespace settings = properties.getNamespaces().get(namespace);
+        if (settings == null || !settings.isEnabled()) {
+            return loader.get();
+        }
+
+        String key = key(namespace, template, inputs);
+        Cache<String, Object> local = localCache(namespace, settings);
+
+        Object cached = local.getIfPresent(key);
+        if (type.isInstance(cached)) {
+            record(namespace, "l1");
+            return type.cast(cached);
+        }
+
+        T remote = readRemote(key, type);
+        if (remote != null) {
+            record(namespace, "l2");
+            local.put(key, remote);
+            return remote;
+        }
+
+        record(namespace, "miss");
+        T value = loader.get();
+        if (value != null) {
+            local.put(key, value);
+            writeRemote(key, value, settings);
+        }
+        return value;
+    }
+
+    private Cache<String, Object> localCache(String namespace, ResponseCacheProperties.Namespace settings) {
+        return localCaches.computeIfAbsent(namespace, name -> {
+            Cache<String, Object> cache = Caffeine.newBuilder()
+                    .maximumSize(settings.getMaxSize())
+                    .expireAfterWrite(settings.getTtl())
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "response-cache." + name);
+            return cache;
+        });
+    }
+
+    private <T> T readRemote(String key, Class<T> type) {
+        try {
+            String value = stringRedisTemplate.opsForValue().get(key);
+            return value != null ? objectMapper.readValue(value, type) : null;
+        } catch (Exception e) {
+            log.warn("Failed to read cached response {}", key, e);
+            return null;
+        }
+    }
+
+    private void writeRemote(String key, Object value, ResponseCacheProperties.Namespace settings) {
+        try {
+            stringRedisTemplate.opsForValue().set(key, objectMapper.writeValueAsString(value), settings.getTtl());
+        } catch (Exception e) {
+            log.warn("Failed to cache response {}", key, e);
+        }
+    }
+
+    private void record(String namespace, String result) {
+        meterRegistry.counter("imagibox.cache.requests", "namespace", namespace, "result", result).increment();
+    }
+
+    private String key(String namespace, String template, String... inputs) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(template.getBytes(StandardCharsets.UTF_8));
+            for (String input : inputs) {
+                digest.update((byte) 0);
+                digest.update(SingleFlight.normalize(input).getBytes(StandardCharsets.UTF_8));
+            }
+            return KEY_PREFIX + namespace + ":" + HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
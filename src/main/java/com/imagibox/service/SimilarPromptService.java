@@ -0,0 +1,126 @@
+package com.imagibox.service;
+
+import com.imagibox.util.MinHashIndex;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds recent prompts that are near-duplicates of a new one ("bạn thỏ trắng đi
+ * lạc trong rừng" vs "chú thỏ trắng đi lạc trong rừng", Jaccard 0.80), so their
+ * image prompt or illustration can be reused where an exact-match cache would
+ * miss. Prompts are diacritic-folded and split into character 3-grams;
+ * similarity is estimated Jaccard over those. Only entries with the same mood
+ * are considered.
+ *
+ * The default threshold of 0.7 sits well below such rewordings but above prompts
+ * that differ in what they are about: "con mèo đi học" vs "con chó đi học" is
+ * 0.50 and "con mèo đi học" vs "con mèo đi chơi" 0.56. Short prompts that differ
+ * in one word ("con mèo đi học" vs "chú mèo đi học", 0.60) are left to the exact cache.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SimilarPromptService {
+
+    public static final String IMAGE_PROMPT = "image-prompt";
+    public static final String ILLUSTRATION = "illustration";
+
+    private static final int SHINGLE_SIZE = 3;
+    private static final int BANDS = 16;
+    private static final int ROWS = 4;
+    private static final long SEED = 0x1A9B0C5L;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, MinHashIndex<Entry>> indexes = new ConcurrentHashMap<>();
+
+    @Value("${imagibox.similarity.enabled:true}")
+    private boolean enabled;
+
+    @Value("${imagibox.similarity.reuse-illustrations:false}")
+    private boolean reuseIllustrations;
+
+    @Value("${imagibox.similarity.threshold:0.7}")
+    private double threshold;
+
+    @Value("${imagibox.similarity.capacity:10000}")
+    private int capacity;
+
+    private record Entry(String mood, String value) {
+    }
+
+    public Optional<String> find(String kind, String prompt, String mood) {
+        if (!isEnabled(kind)) {
+            return Optional.empty();
+        }
+
+        String normalizedMood = fold(mood);
+        Optional<MinHashIndex.Match<Entry>> match = index(kind).findMostSimilar(
+                shingles(prompt), threshold, entry -> entry.mood().equals(normalizedMood));
+
+        meterRegistry.counter("imagibox.similarity.lookups", "kind", kind,
+                "result", match.isPresent() ? "hit" : "miss").increment();
+        match.ifPresent(m -> log.debug("Reusing {} of a similar prompt (similarity {})", kind, m.similarity()));
+        return match.map(m -> m.value().value());
+    }
+
+    public void record(String kind, String prompt, String mood, String value) {
+        if (isEnabled(kind) && value != null) {
+            index(kind).put(shingles(prompt), new Entry(fold(mood), value));
+        }
+    }
+
+    private boolean isEnabled(String kind) {
+        return enabled && (reuseIllustrations || !ILLUSTRATION.equals(kind));
+    }
+
+    private MinHashIndex<Entry> index(String kind) {
+        return indexes.computeIfAbsent(kind, k -> new MinHashIndex<>(BANDS, ROWS, capacity, SEED));
+    }
+
+    /**
+     * Character 3-grams of the folded prompt; short prompts become a single shingle.
+     */
+    static Set<String> shingles(String prompt) {
+        String folded = fold(prompt);
+        Set<String> shingles = new HashSet<>();
+        if (folded.length() <= SHINGLE_SIZE) {
+            if (!folded.isEmpty()) {
+                shingles.add(folded);
+            }
+            return shingles;
+        }
+        for (int i = 0; i + SHINGLE_SIZE <= folded.length(); i++) {
+            shingles.add(folded.substring(i, i + SHINGLE_SIZE));
+        }
+        return shingles;
+    }
+
+    /**
+     * Lower-cases, strips Vietnamese (and other) diacritics, maps đ to d and
+     * collapses punctuation and whitespace to single spaces.
+     */
+    static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .replace('đ', 'd')
+                .replace('Đ', 'D');
+        return decomposed.toLowerCase(Locale.ROOT)
+                .replaceAll("[^\\p{L}\\p{N}]+", " ")
+                .trim();
+    }
+}
@@ -0,0 +1,196 @@
+package com.imagibox.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.imagibox.concurrent.GenerationContext;
+import com.imagibox.domain.entity.Chapter;
+import com.imagibox.domain.entity.Story;
+import com.imagibox.domain.enums.GenerationPriority;
+import com.imagibox.dto.ai.ContinuationDraft;
+import com.imagibox.service.ImageService.Illustration;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Pre-generates both continuations of an interactive chapter while the kid is
+ * still reading it. When the kid picks A or B the matching branch is committed
+ * straight from Redis; the other branch is thrown away. Spend is capped by a
+ * per-user daily budget of speculative branches and a node-wide worker pool.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SpeculativeChapterService {
+
+    private static final String BRANCH_KEY_PREFIX = "speculative:story:";
+    private static final String BUDGET_KEY_PREFIX = "speculative:budget:user:";
+    private static final List<String> CHOICE_KEYS = List.of("A", "B");
+
+    // Read and drop every branch in one step, so two concurrent requests cannot both commit one
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final RedisScript<List> TAKE_BRANCHES_SCRIPT = new DefaultRedisScript<>("""
+            local values = {}
+            for i, key in ipairs(KEYS) do
+                values[i] = redis.call('GET', key)
+                redis.call('DEL', key)
+            end
+            return values
+            """, List.class);
+
+    private final AiService aiService;
+    private final ImageService imageService;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Qualifier("speculativeExecutor")
+    private final TaskExecutor speculativeExecutor;
+
+    @Value("${imagibox.speculative.enabled:false}")
+    private boolean enabled;
+
+    @Value("${imagibox.speculative.ttl:PT15M}")
+    private Duration ttl;
+
+    @Value("${imagibox.speculative.daily-branch-budget:20}")
+    private int dailyBranchBudget;
+
+    @Value("${imagibox.speculative.image-timeout:PT2M}")
+    private Duration imageTimeout;
+
+    public record SpeculativeChapter(String choiceKey, String choiceText, ContinuationDraft draft, String imageUrl) {
+
+        public Illustration illustration() {
+            return imageUrl != null ? new Illustration(imageUrl, null) : null;
+        }
+    }
+
+    /**
+     * Starts background generation of both branches of the given chapter.
+     * The context supplier is evaluated on the worker thread, after the chapter is saved.
+     */
+    public void prefetch(Story story, Chapter chapter, Supplier<String> context) {
+        if (!enabled || chapter.getChoices() == null) {
+            return;
+        }
+
+        Long userId = story.getUser().getId();
+        String mood = story.getMetadata().get("mood").toString();
+        for (String choiceKey : CHOICE_KEYS) {
+            Object choiceText = chapter.getChoices().get(choiceKey);
+            if (choiceText == null || !reserveBudget(userId)) {
+                continue;
+            }
+
+            try {
+                speculativeExecutor.execute(() -> generateBranch(
+                        story.getId(), chapter.getChapterNumber(), choiceKey, choiceText.toString(), mood, context));
+            } catch (TaskRejectedException e) {
+                log.debug("Speculative pool is full, skipping branch {} of story {}", choiceKey, story.getId());
+                refundBudget(userId);
+            }
+        }
+    }
+
+    /**
+     * Returns the pre-generated continuation matching the kid's choice, if one is ready,
+     * and discards every branch of that chapter.
+     */
+    public Optional<SpeculativeChapter> take(Long storyId, int chapterNumber, String userChoice) {
+        if (!enabled || userChoice == null) {
+            return Optional.empty();
+        }
+
+        List<String> keys = CHOICE_KEYS.stream()
+                .map(choiceKey -> branchKey(storyId, chapterNumber, choiceKey))
+                .toList();
+        @SuppressWarnings("unchecked")
+        List<Object> values = stringRedisTemplate.execute(TAKE_BRANCHES_SCRIPT, keys);
+
+        if (values == null) {
+            return Optional.empty();
+        }
+
+        String choice = userChoice.trim();
+        for (Object value : values) {
+            // Missing branches come back as null
+            if (!(value instanceof String json)) {
+                continue;
+            }
+            try {
+                SpeculativeChapter branch = objectMapper.readValue(json, SpeculativeChapter.class);
+                if (choice.equalsIgnoreCase(branch.choiceKey()) || choice.equalsIgnoreCase(branch.choiceText())) {
+                    log.info("Speculative hit for story {} chapter {} branch {}",
+                            storyId, chapterNumber + 1, branch.choiceKey());
+                    return Optional.of(branch);
+                }
+            } catch (Exception e) {
+                log.warn("Discarding unreadable speculative branch for story {}", storyId, e);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void generateBranch(Long storyId, int chapterNumber, String choiceKey, String choiceText, String mood,
+            Supplier<String> context) {
+        // Nobody waits on a branch, so it does not inherit the deadline of the request that queued it
+        try (GenerationContext.Scope scope = GenerationContext.open(
+                GenerationPriority.BACKGROUND, GenerationContext.family(), null)) {
+            ContinuationDraft draft = aiService.generateNextChapter(context.get(), choiceText);
+
+            String imageUrl = null;
+            try {
+                imageUrl = imageService
+                        .illustrateChapter(draft.content(), draft.scene(), mood, Instant.now().plus(imageTimeout))
+                        .get(imageTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                        .imageUrl();
+            } catch (Exception e) {
+                log.warn("Speculative illustration failed for story {} branch {}", storyId, choiceKey, e);
+            }
+
+            SpeculativeChapter branch = new SpeculativeChapter(choiceKey, choiceText, draft, imageUrl);
+            stringRedisTemplate.opsForValue().set(
+                    branchKey(storyId, chapterNumber, choiceKey),
+                    objectMapper.writeValueAsString(branch),
+                    ttl);
+            log.debug("Speculative branch {} ready for story {} chapter {}", choiceKey, storyId, chapterNumber + 1);
+        } catch (Exception e) {
+            log.warn("Speculative generation failed for story {} branch {}", storyId, choiceKey, e);
+        }
+    }
+
+    private boolean reserveBudget(Long userId) {
+        String key = BUDGET_KEY_PREFIX + userId + ":" + LocalDate.now();
+        Long used = stringRedisTemplate.opsForValue().increment(key);
+        if (used != null && used == 1) {
+            stringRedisTemplate.expire(key, Duration.ofDays(1));
+        }
+        return used != null && used <= dailyBranchBudget;
+    }
+
+    private void refundBudget(Long userId) {
+        try {
+            stringRedisTemplate.opsForValue().decrement(BUDGET_KEY_PREFIX + userId + ":" + LocalDate.now());
+        } catch (Exception e) {
+            log.warn("Failed to refund speculative budget of user {}", userId, e);
+        }
+    }
+
+    private String branchKey(Long storyId, int chapterNumber, String choiceKey) {
+        return BRANCH_KEY_PREFIX + storyId + ":" + chapterNumber + ":" + choiceKey;
+    }
+}
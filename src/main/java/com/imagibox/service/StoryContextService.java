@@ -0,0 +1,200 @@
+package com.imagibox.service;
+
+import com.imagibox.concurrent.GenerationContext;
+import com.imagibox.domain.entity.Chapter;
+import com.imagibox.domain.entity.Story;
+import com.imagibox.domain.enums.GenerationPriority;
+import com.imagibox.exception.ResourceNotFoundException;
+import com.imagibox.repository.ChapterRepository;
+import com.imagibox.repository.StoryRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the "story so far" for next-chapter prompts: a rolling summary of older
+ * chapters (kept in Story.metadata) followed by the most recent chapters verbatim,
+ * so the prompt stays about the same size however long the story gets.
+ *
+ * The formatted chapters are also kept in a Redis list (index i = chapter i+1),
+ * appended as chapters are saved, so building the context is one list read
+ * instead of loading every chapter row.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StoryContextService {
+
+    // Metadata keys; StoryRepository.updateSummary writes the same keys in SQL
+    public static final String SUMMARY_KEY = "summary";
+    public static final String SUMMARIZED_THROUGH_KEY = "summarizedThrough";
+
+    private static final String CONTEXT_KEY_PREFIX = "story-context:";
+
+    // Append only when the list holds exactly the chapters before this one; otherwise drop it for a rebuild
+    private static final RedisScript<Long> APPEND_CHAPTER_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('LLEN', KEYS[1]) == tonumber(ARGV[1]) - 1 then
+                redis.call('RPUSH', KEYS[1], ARGV[2])
+                redis.call('PEXPIRE', KEYS[1], ARGV[3])
+                return 1
+            end
+            redis.call('DEL', KEYS[1])
+            return 0
+            """, Long.class);
+
+    private final StoryRepository storyRepository;
+    private final ChapterRepository chapterRepository;
+    private final StoryPersistenceService storyPersistenceService;
+    private final AiService aiService;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Qualifier("taskExecutor")
+    private final Executor taskExecutor;
+
+    @Value("${imagibox.context.recent-chapters:2}")
+    private int recentChapters;
+
+    @Value("${imagibox.context.cache-ttl:P7D}")
+    private Duration cacheTtl;
+
+    public String buildContext(Story story) {
+        // Everything not yet folded into the summary goes in verbatim, so a lagging summary only costs tokens
+        String recent = String.join("\n\n", verbatimChapters(story, summarizedThrough(story)));
+
+        String summary = summary(story);
+        if (summary == null) {
+            return recent;
+        }
+        return "Tóm tắt các chương trước: " + summary + "\n\n" + recent;
+    }
+
+    /**
+     * Appends the chapter to the cached context and folds chapters that have left the
+     * verbatim window into the summary, in the background. Called once per saved chapter.
+     */
+    public void onChapterSaved(Story story, Chapter chapter) {
+        appendToCache(story.getId(), chapter);
+
+        int target = chapter.getChapterNumber() - recentChapters;
+        if (target <= summarizedThrough(story)) {
+            return;
+        }
+
+        // The summary outlives the request, so it does not inherit the request's deadline
+        try (GenerationContext.Scope scope = GenerationContext.open(
+                GenerationPriority.BACKGROUND, GenerationContext.family(), null)) {
+            CompletableFuture.runAsync(() -> advanceSummary(story.getId(), target), taskExecutor)
+                    .exceptionally(e -> {
+                        log.warn("Failed to update summary for story {}", story.getId(), e);
+                        return null;
+                    });
+        }
+    }
+
+    public void evict(Long storyId) {
+        stringRedisTemplate.delete(CONTEXT_KEY_PREFIX + storyId);
+    }
+
+    private List<String> verbatimChapters(Story story, int after) {
+        String key = CONTEXT_KEY_PREFIX + story.getId();
+        int latest = chapterRepository.findMaxChapterNumberByStoryId(story.getId()).orElse(0);
+
+        try {
+            List<String> cached = stringRedisTemplate.opsForList().range(key, after, -1);
+            // The range only has this many entries when the list covers every chapter up to the latest
+            if (cached != null && latest > 0 && cached.size() == latest - after) {
+                return cached;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read cached context for story {}", story.getId(), e);
+        }
+
+        List<Chapter> chapters = chapterRepository.findByStoryIdOrderByChapterNumberAsc(story.getId());
+        List<String> formatted = chapters.stream().map(this::formatChapter).toList();
+        rebuildCache(key, chapters, formatted);
+
+        return chapters.stream()
+                .filter(ch -> ch.getChapterNumber() > after)
+                .map(this::formatChapter)
+                .toList();
+    }
+
+    private void rebuildCache(String key, List<Chapter> chapters, List<String> formatted) {
+        try {
+            stringRedisTemplate.delete(key);
+            // List positions stand in for chapter numbers, so only cache a gap-free story
+            for (int i = 0; i < chapters.size(); i++) {
+                if (chapters.get(i).getChapterNumber() != i + 1) {
+                    return;
+                }
+            }
+            if (!formatted.isEmpty()) {
+                stringRedisTemplate.opsForList().rightPushAll(key, formatted);
+                stringRedisTemplate.expire(key, cacheTtl);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to cache context under {}", key, e);
+        }
+    }
+
+    private void appendToCache(Long storyId, Chapter chapter) {
+        String key = CONTEXT_KEY_PREFIX + storyId;
+        try {
+            stringRedisTemplate.execute(APPEND_CHAPTER_SCRIPT, List.of(key),
+                    String.valueOf(chapter.getChapterNumber()),
+                    formatChapter(chapter),
+                    String.valueOf(cacheTtl.toMillis()));
+        } catch (Exception e) {
+            log.warn("Failed to append chapter {} to cached context", chapter.getChapterNumber(), e);
+            try {
+                stringRedisTemplate.delete(key);
+            } catch (Exception ignored) {
+                // Stale lists are caught by the length check on read
+            }
+        }
+    }
+
+    private void advanceSummary(Long storyId, int target) {
+        // Re-read so chapters folded by a concurrent update are not summarized twice
+        Story story = storyRepository.findById(storyId)
+                .orElseThrow(() -> new ResourceNotFoundException("Story not found"));
+        int through = summarizedThrough(story);
+        if (target <= through) {
+            return;
+        }
+
+        List<Chapter> chapters = chapterRepository.findByStoryIdAndChapterNumberBetweenOrderByChapterNumberAsc(
+                storyId, through + 1, target);
+        String summary = aiService.summarizeStory(summary(story), chapters.stream()
+                .map(this::formatChapter)
+                .collect(Collectors.joining("\n\n")));
+        storyPersistenceService.updateSummary(storyId, summary, target);
+
+        log.debug("Story {} summarized through chapter {}", storyId, target);
+    }
+
+    private String formatChapter(Chapter chapter) {
+        return "Chương " + chapter.getChapterNumber() + ": " + chapter.getContent().get("text");
+    }
+
+    private String summary(Story story) {
+        Object summary = story.getMetadata() != null ? story.getMetadata().get(SUMMARY_KEY) : null;
+        return summary != null ? summary.toString() : null;
+    }
+
+    private int summarizedThrough(Story story) {
+        Object through = story.getMetadata() != null ? story.getMetadata().get(SUMMARIZED_THROUGH_KEY) : null;
+        return through instanceof Number number ? number.intValue() : 0;
+    }
+}
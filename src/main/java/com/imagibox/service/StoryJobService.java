@@ -0,0 +1,216 @@
+package com.imagibox.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.imagibox.concurrent.GenerationContext;
+import com.imagibox.domain.entity.User;
+import com.imagibox.domain.enums.GenerationPriority;
+import com.imagibox.domain.enums.JobStatus;
+import com.imagibox.domain.enums.StoryMode;
+import com.imagibox.dto.request.GenerateStoryRequest;
+import com.imagibox.dto.response.StoryJobResponseDto;
+import com.imagibox.dto.response.StoryResponseDto;
+import com.imagibox.exception.JobLimitExceededException;
+import com.imagibox.exception.ResourceNotFoundException;
+import com.imagibox.exception.UnauthorizedException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Runs story generation in the background and keeps job state in Redis,
+ * so any node can answer status queries for a job started on another node.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StoryJobService {
+
+    private static final String JOB_KEY_PREFIX = "story-job:";
+    private static final String JOB_TOPIC_PREFIX = "job:";
+    private static final String PENDING_KEY_PREFIX = "story-job:pending:user:";
+
+    // Slots of jobs that died without cleaning up fall out of the window once they are older than the pending TTL
+    private static final RedisScript<Long> RESERVE_SLOT_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', tonumber(ARGV[2]) - tonumber(ARGV[3]))
+            if redis.call('ZCARD', KEYS[1]) >= tonumber(ARGV[4]) then
+                return 0
+            end
+            redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])
+            redis.call('PEXPIRE', KEYS[1], ARGV[3])
+            return 1
+            """, Long.class);
+
+    private final StoryService storyService;
+    private final RateLimitService rateLimitService;
+    private final EventStreamService eventStreamService;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Qualifier("storyJobExecutor")
+    private final TaskExecutor storyJobExecutor;
+
+    @Value("${imagibox.jobs.result-ttl:PT1H}")
+    private Duration resultTtl;
+
+    @Value("${imagibox.jobs.max-pending-per-user:3}")
+    private int maxPendingPerUser;
+
+    @Value("${imagibox.jobs.pending-ttl:PT15M}")
+    private Duration pendingTtl;
+
+    public StoryJobResponseDto submit(StoryMode mode, GenerateStoryRequest request, byte[] sketch, Long userId) {
+        String jobId = UUID.randomUUID().toString();
+        reserveSlot(jobId, userId);
+
+        // Check the prompt and reserve quota now, so a queued job is never refused once it is accepted
+        User user;
+        try {
+            user = storyService.prepareGeneration(request, userId);
+        } catch (RuntimeException e) {
+            releaseSlot(jobId, userId);
+            throw e;
+        }
+
+        OffsetDateTime now = OffsetDateTime.now();
+        StoryJobResponseDto job = StoryJobResponseDto.builder()
+                .jobId(jobId)
+                .mode(mode.name())
+                .status(JobStatus.PENDING.name())
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+        try {
+            save(job, userId);
+            storyJobExecutor.execute(() -> run(job, mode, request, sketch, user));
+        } catch (RuntimeException e) {
+            stringRedisTemplate.delete(JOB_KEY_PREFIX + jobId);
+            releaseSlot(jobId, userId);
+            rateLimitService.refundQuota(userId);
+            throw e;
+        }
+
+        log.info("Story job {} ({}) queued for user {}", job.getJobId(), mode, userId);
+        return job;
+    }
+
+    public StoryJobResponseDto getJob(String jobId, Long userId) {
+        Map<Object, Object> entry = stringRedisTemplate.opsForHash().entries(JOB_KEY_PREFIX + jobId);
+        if (entry.isEmpty()) {
+            throw new ResourceNotFoundException("Job not found");
+        }
+
+        if (!String.valueOf(userId).equals(entry.get("userId"))) {
+            throw new UnauthorizedException("You can only view your own jobs");
+        }
+
+        StoryJobResponseDto job;
+        try {
+            job = objectMapper.readValue((String) entry.get("state"), StoryJobResponseDto.class);
+        } catch (Exception e) {
+            log.error("Failed to read job {}", jobId, e);
+            throw new RuntimeException("Failed to read job state");
+        }
+
+        // The story was stored when the job finished, usually before its illustration was attached
+        job.setStory(storyService.withCurrentImages(job.getStory()));
+        return job;
+    }
+
+    public SseEmitter subscribe(String jobId, Long userId) {
+        // Ownership check first, then subscribe before re-reading so a completion in between is not lost
+        getJob(jobId, userId);
+        SseEmitter emitter = eventStreamService.subscribe(JOB_TOPIC_PREFIX + jobId);
+
+        StoryJobResponseDto job = getJob(jobId, userId);
+        eventStreamService.sendLocal(emitter, "status", job, isFinished(job));
+        return emitter;
+    }
+
+    private void run(StoryJobResponseDto job, StoryMode mode, GenerateStoryRequest request, byte[] sketch,
+            User user) {
+        Long userId = user.getId();
+        GenerationPriority priority = mode == StoryMode.INTERACTIVE
+                ? GenerationPriority.INTERACTIVE
+                : GenerationPriority.ONE_SHOT;
+
+        // The deadline starts when the job does, not when it was queued
+        try (GenerationContext.Scope scope = GenerationContext.open(
+                priority, storyService.familyOf(userId), userId, null)) {
+            update(job, userId, JobStatus.RUNNING, null, null);
+
+            StoryResponseDto story = mode == StoryMode.INTERACTIVE
+                    ? storyService.generateInteractive(request, sketch, user)
+                    : storyService.generateOneShot(request, sketch, user);
+
+            update(job, userId, JobStatus.COMPLETED, story, null);
+        } catch (Exception e) {
+            log.error("Story job {} failed", job.getJobId(), e);
+            update(job, userId, JobStatus.FAILED, null, e.getMessage());
+        } finally {
+            releaseSlot(job.getJobId(), userId);
+        }
+    }
+
+    private void reserveSlot(String jobId, Long userId) {
+        Long reserved = stringRedisTemplate.execute(RESERVE_SLOT_SCRIPT, List.of(PENDING_KEY_PREFIX + userId),
+                jobId,
+                String.valueOf(System.currentTimeMillis()),
+                String.valueOf(pendingTtl.toMillis()),
+                String.valueOf(maxPendingPerUser));
+        if (reserved == null || reserved == 0) {
+            log.warn("User {} already has {} pending story jobs", userId, maxPendingPerUser);
+            throw new JobLimitExceededException("Too many pending story jobs");
+        }
+    }
+
+    private void releaseSlot(String jobId, Long userId) {
+        try {
+            stringRedisTemplate.opsForZSet().remove(PENDING_KEY_PREFIX + userId, jobId);
+        } catch (Exception e) {
+            // The slot expires with the pending TTL anyway
+            log.warn("Failed to release pending slot of job {}", jobId, e);
+        }
+    }
+
+    private void update(StoryJobResponseDto job, Long userId, JobStatus status, StoryResponseDto story,
+            String error) {
+        job.setStatus(status.name());
+        job.setStory(story);
+        job.setError(error);
+        job.setUpdatedAt(OffsetDateTime.now());
+        save(job, userId);
+
+        eventStreamService.publish(JOB_TOPIC_PREFIX + job.getJobId(), "status", job, isFinished(job));
+    }
+
+    private void save(StoryJobResponseDto job, Long userId) {
+        String key = JOB_KEY_PREFIX + job.getJobId();
+        try {
+            stringRedisTemplate.opsForHash().putAll(key, Map.of(
+                    "userId", String.valueOf(userId),
+                    "state", objectMapper.writeValueAsString(job)));
+            stringRedisTemplate.expire(key, resultTtl);
+        } catch (Exception e) {
+            log.error("Failed to save job {}", job.getJobId(), e);
+            throw new RuntimeException("Failed to save job state");
+        }
+    }
+
+    private boolean isFinished(StoryJobResponseDto job) {
+        return JobStatus.COMPLETED.name().equals(job.getStatus())
+                || JobStatus.FAILED.name().equals(job.getStatus());
+    }
+}
@@ -0,0 +1,106 @@
+package com.imagibox.service;
+
+import com.imagibox.config.DeadlineProperties;
+import com.imagibox.domain.entity.Chapter;
+import com.imagibox.domain.entity.MoodTag;
+import com.imagibox.domain.entity.Story;
+import com.imagibox.domain.enums.ImageStatus;
+import com.imagibox.exception.ResourceNotFoundException;
+import com.imagibox.repository.ChapterRepository;
+import com.imagibox.repository.MoodTagRepository;
+import com.imagibox.repository.StoryRepository;
+import com.imagibox.service.ImageService.Illustration;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Short write transactions for generated stories. Kept apart from StoryService
+ * so a database connection is only checked out after every AI and Cloudinary
+ * call has finished.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StoryPersistenceService {
+
+    private final StoryRepository storyRepository;
+    private final ChapterRepository chapterRepository;
+    private final MoodTagRepository moodTagRepository;
+    private final DeadlineProperties deadlineProperties;
+
+    @Transactional
+    public Chapter saveNewStory(Story story, Chapter chapter, String mood) {
+        storyRepository.save(story);
+        chapter.setStory(story);
+        return saveChapter(chapter, mood);
+    }
+
+    @Transactional
+    public Chapter saveChapter(Chapter chapter, String mood) {
+        chapterRepository.save(chapter);
+
+        // Track mood for parent dashboard
+        if (mood != null) {
+            MoodTag moodTag = MoodTag.builder()
+                    .chapter(chapter)
+                    .moodTag(mood)
+                    .build();
+            moodTagRepository.save(moodTag);
+        }
+
+        return chapter;
+    }
+
+    /**
+     * Stores a rolling summary unless a newer one (covering more chapters) was saved meanwhile.
+     * Only the summary keys are written, so concurrent changes to other metadata are kept.
+     */
+    @Transactional
+    public void updateSummary(Long storyId, String summary, int summarizedThrough) {
+        if (storyRepository.updateSummary(storyId, summary, summarizedThrough) == 0) {
+            log.debug("Story {} is gone or already summarized through chapter {}", storyId, summarizedThrough);
+        }
+    }
+
+    @Transactional
+    public Chapter attachIllustration(Long chapterId, Illustration illustration) {
+        Chapter chapter = chapterRepository.findById(chapterId)
+                .orElseThrow(() -> new ResourceNotFoundException("Chapter not found"));
+
+        chapter.setImageUrl(illustration.imageUrl());
+        if (illustration.sketchUrl() != null) {
+            chapter.setOriginalSketchUrl(illustration.sketchUrl());
+        }
+        chapter.setImageStatus(ImageStatus.READY);
+        return chapter;
+    }
+
+    @Transactional
+    public Chapter markIllustrationFailed(Long chapterId) {
+        Chapter chapter = chapterRepository.findById(chapterId)
+                .orElseThrow(() -> new ResourceNotFoundException("Chapter not found"));
+
+        chapter.setImageStatus(ImageStatus.FAILED);
+        return chapter;
+    }
+
+    /**
+     * Fails illustrations that outlived the image budget: their callback was lost,
+     * for example because the node running it went down, and nothing else would
+     * move them out of PENDING.
+     */
+    @Scheduled(fixedDelayString = "${imagibox.generation.deadlines.pending-image-sweep:PT1M}")
+    @Transactional
+    public void failStalePendingImages() {
+        int failed = chapterRepository.updateImageStatusCreatedBefore(ImageStatus.PENDING, ImageStatus.FAILED,
+                OffsetDateTime.now().minus(deadlineProperties.getImage()));
+        if (failed > 0) {
+            log.warn("Marked {} chapters with stale pending illustrations as failed", failed);
+        }
+    }
+}
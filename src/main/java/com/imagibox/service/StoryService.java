@@ -1,26 +1,44 @@
 package com.imagibox.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.imagibox.concurrent.GenerationContext;
+import com.imagibox.config.DeadlineProperties;
 import com.imagibox.domain.entity.*;
+import com.imagibox.domain.enums.GenerationPriority;
+import com.imagibox.domain.enums.ImageStatus;
 import com.imagibox.domain.enums.StoryMode;
 import com.imagibox.domain.enums.StoryStatus;
+import com.imagibox.dto.ai.ContinuationDraft;
+import com.imagibox.dto.ai.InteractiveChapterDraft;
+import com.imagibox.dto.ai.StoryDraft;
 import com.imagibox.dto.request.GenerateStoryRequest;
 import com.imagibox.dto.request.NextChapterRequest;
 import com.imagibox.dto.response.ChapterResponseDto;
 import com.imagibox.dto.response.StoryResponseDto;
+import com.imagibox.exception.DeadlineExceededException;
 import com.imagibox.exception.ResourceNotFoundException;
 import com.imagibox.exception.UnauthorizedException;
 import com.imagibox.repository.*;
+import com.imagibox.service.ImageService.Illustration;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 @Service
@@ -28,68 +46,92 @@ import java.util.stream.Collectors;
 @Slf4j
 public class StoryService {
 
+    private static final String STORY_TOPIC_PREFIX = "story:";
+
     private final StoryRepository storyRepository;
     private final ChapterRepository chapterRepository;
     private final UserRepository userRepository;
-    private final MoodTagRepository moodTagRepository;
+    private final StoryPersistenceService storyPersistenceService;
+    private final StoryContextService storyContextService;
+    private final EventStreamService eventStreamService;
     private final AiService aiService;
     private final ImageService imageService;
+    private final SpeculativeChapterService speculativeChapterService;
     private final ContentSafetyService contentSafetyService;
     private final RateLimitService rateLimitService;
-    private final ObjectMapper objectMapper;
+    private final TokenUsageService tokenUsageService;
+    private final DeadlineProperties deadlineProperties;
+
+    @Qualifier("taskExecutor")
+    private final Executor taskExecutor;
+
 
-    @Transactional
     public StoryResponseDto generateOneShot(
             GenerateStoryRequest request,
             MultipartFile sketch,
             Long userId) {
-        log.info("Generating one-shot story for user {}", userId);
-
-        contentSafetyService.validatePrompt(request.getPrompt());
-
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found"));
-        rateLimitService.checkAndIncrementQuota(userId, user.getDailyQuota());
+        return generateOneShot(request, readSketch(sketch), userId);
+    }
 
-        Map<String, String> storyData = aiService.generateStory(request.getPrompt(), request.getMood());
-        String rawResponse = storyData.get("raw");
+    public StoryResponseDto generateOneShot(
+            GenerateStoryRequest request,
+            byte[] sketch,
+            Long userId) {
+        log.info("Generating one-shot story for user {}", userId);
 
-        Map<String, String> parsedStory;
-        try {
-            parsedStory = objectMapper.readValue(rawResponse, new TypeReference<>() {
-            });
-        } catch (Exception e) {
-            log.error("Failed to parse AI response", e);
-            throw new RuntimeException("Failed to generate story");
+        User user = prepareGeneration(request, userId);
+        try (GenerationContext.Scope scope = GenerationContext.open(
+                GenerationPriority.ONE_SHOT, familyOf(userId), userId,
+                deadlineAfter(deadlineProperties.getOneShot()))) {
+            return generateOneShot(request, sketch, user);
         }
+    }
 
-        String title = parsedStory.getOrDefault("title", "Câu chuyện của bé");
-        String content = parsedStory.getOrDefault("content", rawResponse);
-        String moral = parsedStory.getOrDefault("moral", "");
-
-        // Handle image generation
-        String imageUrl = null;
-        String sketchUrl = null;
-
-        try {
-            if (sketch != null && !sketch.isEmpty()) {
-                // Pass MultipartFile directly - it handles upload + generation
-                Map<String, String> result = imageService.generateIllustration(
-                        sketch,
-                        request.getPrompt(),
-                        request.getMood()).join();
-
-                sketchUrl = result.get("sketchUrl");
-                imageUrl = result.get("generatedUrl");
-            } else {
-                imageUrl = imageService.generateIllustrationFromText(
-                        request.getPrompt(),
-                        request.getMood()).join();
+    /**
+     * For callers that have already checked the prompt and reserved quota, e.g. batches.
+     */
+    public StoryResponseDto generateOneShot(
+            GenerateStoryRequest request,
+            byte[] sketch,
+            User user) {
+        Instant deadline = GenerationContext.deadline() != null
+                ? GenerationContext.deadline()
+                : deadlineAfter(deadlineProperties.getOneShot());
+        Instant imageDeadline = newImageDeadline();
+
+        try (GenerationContext.Scope scope = GenerationContext.forUser(user.getId(), deadline)) {
+            // Text and illustration only depend on the prompt, so run them side by side
+            CompletableFuture<StoryDraft> storyData = CompletableFuture.supplyAsync(
+                    () -> aiService.generateStory(request.getPrompt(), request.getMood()), taskExecutor);
+            CompletableFuture<Illustration> illustration = imageService.illustrate(
+                    request.getPrompt(), request.getMood(), sketch, imageDeadline);
+
+            StoryDraft draft;
+            try {
+                draft = await(storyData, deadline);
+            } catch (RuntimeException e) {
+                // Nothing will attach the image without the text; stop it rather than render for nobody
+                illustration.cancel(true);
+                throw e;
             }
-        } catch (Exception e) {
-            log.error("Image generation failed, continuing without image", e);
-            imageUrl = null;
+            return completeOneShot(request, user, draft, illustration, imageDeadline);
         }
+    }
+
+    /**
+     * Turns the AI draft of a one-shot story into a persisted story.
+     * Shared by the blocking endpoint and the streaming endpoint. Not transactional:
+     * only the final save in StoryPersistenceService holds a connection.
+     */
+    public StoryResponseDto completeOneShot(
+            GenerateStoryRequest request,
+            User user,
+            StoryDraft draft,
+            CompletableFuture<Illustration> illustration,
+            Instant imageDeadline) {
+        String title = draft.title() != null ? draft.title() : "Câu chuyện của bé";
+        String content = draft.content();
+        String moral = draft.moral() != null ? draft.moral() : "";
 
         Story story = Story.builder()
                 .user(user)
@@ -101,93 +143,89 @@ public class StoryService {
                         "mood", request.getMood() != null ? request.getMood() : "Vui vẻ")))
                 .build();
 
-        storyRepository.save(story);
-
         Map<String, Object> chapterContent = new HashMap<>();
         chapterContent.put("text", content);
         chapterContent.put("moral", moral);
 
         Chapter chapter = Chapter.builder()
-                .story(story)
                 .chapterNumber(1)
                 .content(chapterContent)
                 .userPrompt(request.getPrompt())
                 .moodTag(request.getMood())
-                .imageUrl(imageUrl)
-                .originalSketchUrl(sketchUrl)
                 .build();
 
-        chapterRepository.save(chapter);
-
-        // Track mood for parent dashboard
-        if (request.getMood() != null) {
-            MoodTag moodTag = MoodTag.builder()
-                    .chapter(chapter)
-                    .moodTag(request.getMood())
-                    .build();
-            moodTagRepository.save(moodTag);
-        }
+        applyIfReady(chapter, illustration);
+        storyPersistenceService.saveNewStory(story, chapter, request.getMood());
+        attachWhenReady(chapter, illustration, imageDeadline);
 
         log.info("Story created successfully: {}", story.getId());
 
         return mapToStoryResponse(story, Collections.singletonList(chapter));
     }
 
-    @Transactional
     public StoryResponseDto generateInteractive(
             GenerateStoryRequest request,
             MultipartFile sketch,
             Long userId) {
-        log.info("Generating interactive story for user {}", userId);
-
-        contentSafetyService.validatePrompt(request.getPrompt());
-
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found"));
-        rateLimitService.checkAndIncrementQuota(userId, user.getDailyQuota());
+        return generateInteractive(request, readSketch(sketch), userId);
+    }
 
-        // Generate first chapter content with choices
-        Map<String, String> storyData = aiService.generateInteractiveFirstChapter(request.getPrompt(),
-                request.getMood());
-        String rawResponse = storyData.get("raw");
+    public StoryResponseDto generateInteractive(
+            GenerateStoryRequest request,
+            byte[] sketch,
+            Long userId) {
+        log.info("Generating interactive story for user {}", userId);
 
-        Map<String, String> parsedStory;
-        try {
-            parsedStory = objectMapper.readValue(rawResponse, new TypeReference<>() {
-            });
-        } catch (Exception e) {
-            log.error("Failed to parse AI response", e);
-            throw new RuntimeException("Failed to generate story");
+        User user = prepareGeneration(request, userId);
+        try (GenerationContext.Scope scope = GenerationContext.open(
+                GenerationPriority.INTERACTIVE, familyOf(userId), userId,
+                deadlineAfter(deadlineProperties.getInteractive()))) {
+            return generateInteractive(request, sketch, user);
         }
+    }
 
-        String title = parsedStory.getOrDefault("title", "Câu chuyện tương tác");
-        String content = parsedStory.getOrDefault("content", rawResponse);
-        String choiceA = parsedStory.get("choiceA");
-        String choiceB = parsedStory.get("choiceB");
-
-        // Handle image generation
-        String imageUrl = null;
-        String sketchUrl = null;
-
-        try {
-            if (sketch != null && !sketch.isEmpty()) {
-                // Pass MultipartFile directly - it handles upload + generation
-                Map<String, String> result = imageService.generateIllustration(
-                        sketch,
-                        request.getPrompt(),
-                        request.getMood()).join();
-
-                sketchUrl = result.get("sketchUrl");
-                imageUrl = result.get("generatedUrl");
-            } else {
-                imageUrl = imageService.generateIllustrationFromText(
-                        request.getPrompt(),
-                        request.getMood()).join();
+    /**
+     * For callers that have already checked the prompt and reserved quota, e.g. queued jobs.
+     */
+    public StoryResponseDto generateInteractive(
+            GenerateStoryRequest request,
+            byte[] sketch,
+            User user) {
+        Instant deadline = GenerationContext.deadline() != null
+                ? GenerationContext.deadline()
+                : deadlineAfter(deadlineProperties.getInteractive());
+        Instant imageDeadline = newImageDeadline();
+
+        try (GenerationContext.Scope scope = GenerationContext.forUser(user.getId(), deadline)) {
+            // Generate first chapter content with choices, illustrating in parallel
+            CompletableFuture<InteractiveChapterDraft> storyData = CompletableFuture.supplyAsync(
+                    () -> aiService.generateInteractiveFirstChapter(request.getPrompt(), request.getMood()),
+                    taskExecutor);
+            CompletableFuture<Illustration> illustration = imageService.illustrate(
+                    request.getPrompt(), request.getMood(), sketch, imageDeadline);
+
+            InteractiveChapterDraft draft;
+            try {
+                draft = await(storyData, deadline);
+            } catch (RuntimeException e) {
+                // Nothing will attach the image without the text; stop it rather than render for nobody
+                illustration.cancel(true);
+                throw e;
             }
-        } catch (Exception e) {
-            log.error("Image generation failed, continuing without image", e);
-            return null;
+            return completeInteractive(request, user, draft, illustration, imageDeadline);
         }
+    }
+
+    public StoryResponseDto completeInteractive(
+            GenerateStoryRequest request,
+            User user,
+            InteractiveChapterDraft draft,
+            CompletableFuture<Illustration> illustration,
+            Instant imageDeadline) {
+        String title = draft.title() != null ? draft.title() : "Câu chuyện tương tác";
+        String content = draft.content();
+        String choiceA = draft.choiceA();
+        String choiceB = draft.choiceB();
 
         // Create interactive story
         Story story = Story.builder()
@@ -199,8 +237,6 @@ public class StoryService {
                         "mood", request.getMood() != null ? request.getMood() : "Vui vẻ")))
                 .build();
 
-        storyRepository.save(story);
-
         // Create first chapter
         Map<String, Object> chapterContent = new HashMap<>();
         chapterContent.put("text", content);
@@ -214,76 +250,66 @@ public class StoryService {
         }
 
         Chapter chapter = Chapter.builder()
-                .story(story)
                 .chapterNumber(1)
                 .content(chapterContent)
                 .choices(chapterChoices)
                 .userPrompt(request.getPrompt())
                 .moodTag(request.getMood())
-                .imageUrl(imageUrl)
-                .originalSketchUrl(sketchUrl)
                 .build();
 
-        chapterRepository.save(chapter);
-
-        // Track mood for parent dashboard
-        if (request.getMood() != null) {
-            MoodTag moodTag = MoodTag.builder()
-                    .chapter(chapter)
-                    .moodTag(request.getMood())
-                    .build();
-            moodTagRepository.save(moodTag);
-        }
+        applyIfReady(chapter, illustration);
+        storyPersistenceService.saveNewStory(story, chapter, request.getMood());
+        attachWhenReady(chapter, illustration, imageDeadline);
+        storyContextService.onChapterSaved(story, chapter);
+        speculativeChapterService.prefetch(story, chapter, () -> storyContextService.buildContext(story));
 
         log.info("Interactive story created successfully: {}", story.getId());
 
         return mapToStoryResponse(story, Collections.singletonList(chapter));
     }
 
-    @Transactional
     public ChapterResponseDto generateNextChapter(Long storyId, NextChapterRequest request, Long userId) {
         log.info("Generating next chapter for story {}", storyId);
 
-        Story story = storyRepository.findById(storyId)
-                .orElseThrow(() -> new ResourceNotFoundException("Story not found"));
-
-        if (!story.getUser().getId().equals(userId)) {
-            throw new UnauthorizedException("You can only continue your own stories");
-        }
+        Story story = loadInteractiveStory(storyId, userId);
+        Instant deadline = deadlineAfter(deadlineProperties.getNextChapter());
+        try (GenerationContext.Scope scope = GenerationContext.open(
+                GenerationPriority.INTERACTIVE, familyOf(userId), userId, deadline)) {
+            Optional<ChapterResponseDto> speculative = commitSpeculativeChapter(story, request);
+            if (speculative.isPresent()) {
+                return speculative.get();
+            }
 
-        if (story.getMode() != StoryMode.INTERACTIVE) {
-            throw new IllegalArgumentException("Only interactive stories can have multiple chapters");
+            String context = storyContextService.buildContext(story);
+            CompletableFuture<ContinuationDraft> chapterData = CompletableFuture.supplyAsync(
+                    () -> aiService.generateNextChapter(context, request.getUserChoice()), taskExecutor);
+            return completeNextChapter(story, request, await(chapterData, deadline));
         }
+    }
 
-        List<Chapter> previousChapters = chapterRepository.findByStoryIdOrderByChapterNumberAsc(storyId);
-        String context = buildContext(previousChapters);
-
-        Map<String, String> chapterData = aiService.generateNextChapter(context, request.getUserChoice());
-        String rawResponse = chapterData.get("raw");
-
-        Map<String, String> parsedChapter;
-        try {
-            parsedChapter = objectMapper.readValue(rawResponse, new TypeReference<>() {
-            });
-        } catch (Exception e) {
-            log.error("Failed to parse AI response", e);
-            throw new RuntimeException("Failed to generate chapter");
-        }
+    /**
+     * Commits the pre-generated branch matching the kid's choice, if speculative mode had one ready.
+     */
+    public Optional<ChapterResponseDto> commitSpeculativeChapter(Story story, NextChapterRequest request) {
+        int currentChapter = chapterRepository.findMaxChapterNumberByStoryId(story.getId()).orElse(0);
+        return speculativeChapterService.take(story.getId(), currentChapter, request.getUserChoice())
+                .map(branch -> completeNextChapter(story, request, branch.draft(), branch.illustration()));
+    }
 
-        String content = parsedChapter.getOrDefault("content", rawResponse);
-        String choiceA = parsedChapter.get("choiceA");
-        String choiceB = parsedChapter.get("choiceB");
+    public ChapterResponseDto completeNextChapter(Story story, NextChapterRequest request, ContinuationDraft draft) {
+        return completeNextChapter(story, request, draft, null);
+    }
 
-        // FIXME: sometimes image generation times out here
-        String imageUrl = null;
-        try {
-            imageUrl = imageService.generateIllustrationFromText(content, story.getMetadata().get("mood").toString())
-                    .join();
-        } catch (Exception e) {
-            log.error("Image generation failed", e);
-        }
+    private ChapterResponseDto completeNextChapter(
+            Story story,
+            NextChapterRequest request,
+            ContinuationDraft draft,
+            Illustration prefetchedIllustration) {
+        String content = draft.content();
+        String choiceA = draft.choiceA();
+        String choiceB = draft.choiceB();
 
-        int nextChapterNumber = previousChapters.size() + 1;
+        int nextChapterNumber = chapterRepository.findMaxChapterNumberByStoryId(story.getId()).orElse(0) + 1;
 
         Map<String, Object> chapterContent = new HashMap<>();
         chapterContent.put("text", content);
@@ -299,17 +325,165 @@ public class StoryService {
                 .chapterNumber(nextChapterNumber)
                 .content(chapterContent)
                 .userPrompt(request.getUserChoice() != null ? request.getUserChoice() : "Continue")
-                .imageUrl(imageUrl)
                 .choices(choices.isEmpty() ? null : choices)
                 .build();
 
-        chapterRepository.save(chapter);
+        // The scene depends on the new text, so unless a speculative branch already drew it,
+        // the illustration starts only now and is attached later
+        Instant imageDeadline = newImageDeadline();
+        CompletableFuture<Illustration> illustration = prefetchedIllustration != null
+                ? CompletableFuture.completedFuture(prefetchedIllustration)
+                : imageService.illustrateChapter(content, draft.scene(), story.getMetadata().get("mood").toString(),
+                        imageDeadline);
+
+        applyIfReady(chapter, illustration);
+        storyPersistenceService.saveChapter(chapter, null);
+        attachWhenReady(chapter, illustration, imageDeadline);
+        storyContextService.onChapterSaved(story, chapter);
+        speculativeChapterService.prefetch(story, chapter, () -> storyContextService.buildContext(story));
 
-        log.info("Chapter {} created for story {}", nextChapterNumber, storyId);
+        log.info("Chapter {} created for story {}", nextChapterNumber, story.getId());
 
         return mapToChapterResponse(chapter);
     }
 
+    /**
+     * Validates the prompt and reserves quota before any AI call is made.
+     */
+    public User prepareGeneration(GenerateStoryRequest request, Long userId) {
+        contentSafetyService.validatePrompt(request.getPrompt());
+
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+        tokenUsageService.checkQuota(userId, familyOf(userId));
+        rateLimitService.checkAndIncrementQuota(userId, user.getDailyQuota());
+        return user;
+    }
+
+    /**
+     * The family a user's generations are scheduled under: the parent account for
+     * kids, the user itself otherwise.
+     */
+    public Long familyOf(Long userId) {
+        return userRepository.findFamilyIdByUserId(userId).orElse(userId);
+    }
+
+    /**
+     * Illustrations are attached after the response is sent, so they get their own budget.
+     */
+    public Instant newImageDeadline() {
+        return deadlineAfter(deadlineProperties.getImage());
+    }
+
+    /**
+     * Deadline for a generation started now; every stage of the request shares it.
+     */
+    private Instant deadlineAfter(Duration budget) {
+        return Instant.now().plus(budget);
+    }
+
+    private <T> T await(CompletableFuture<T> future, Instant deadline) {
+        try {
+            return future.get(remainingMillis(deadline), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Cancelling a CompletableFuture does not interrupt the task behind it, only stops dependent
+            // stages; the provider call is interrupted by the Deadlines watchdog on the same deadline
+            future.cancel(true);
+            throw new DeadlineExceededException("Story generation timed out");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException("Story generation failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Story generation interrupted");
+        }
+    }
+
+    /**
+     * Fills in the image right away when the illustration beat the text.
+     */
+    private void applyIfReady(Chapter chapter, CompletableFuture<Illustration> illustration) {
+        if (illustration.isDone() && !illustration.isCompletedExceptionally()) {
+            Illustration result = illustration.join();
+            chapter.setImageUrl(result.imageUrl());
+            chapter.setOriginalSketchUrl(result.sketchUrl());
+            chapter.setImageStatus(ImageStatus.READY);
+        }
+    }
+
+    /**
+     * Writes the illustration back to a saved chapter once it finishes and notifies
+     * subscribers of the story. Clients can also poll the chapter's imageStatus.
+     */
+    private void attachWhenReady(Chapter chapter, CompletableFuture<Illustration> illustration, Instant deadline) {
+        if (chapter.getImageStatus() != ImageStatus.PENDING) {
+            return;
+        }
+
+        Long storyId = chapter.getStory().getId();
+        illustration
+                .orTimeout(remainingMillis(deadline), TimeUnit.MILLISECONDS)
+                .whenComplete((result, error) -> {
+                    try {
+                        Chapter updated;
+                        if (error == null) {
+                            updated = storyPersistenceService.attachIllustration(chapter.getId(), result);
+                        } else {
+                            log.error("Image generation failed for chapter {}", chapter.getId(), error);
+                            updated = storyPersistenceService.markIllustrationFailed(chapter.getId());
+                        }
+                        eventStreamService.publish(STORY_TOPIC_PREFIX + storyId, "image",
+                                mapToChapterResponse(updated));
+                    } catch (Exception e) {
+                        log.error("Failed to attach illustration to chapter {}", chapter.getId(), e);
+                    }
+                });
+    }
+
+    public SseEmitter subscribeToStory(Long storyId, Long userId) {
+        Story story = storyRepository.findById(storyId)
+                .orElseThrow(() -> new ResourceNotFoundException("Story not found"));
+
+        if (!story.getUser().getId().equals(userId)) {
+            throw new UnauthorizedException("You can only view your own stories");
+        }
+
+        // Subscribe before reading so an illustration finishing in between is not lost, then replay
+        // the chapters whose image is still pending or finished within the image budget
+        SseEmitter emitter = eventStreamService.subscribe(STORY_TOPIC_PREFIX + storyId);
+        OffsetDateTime recent = OffsetDateTime.now().minus(deadlineProperties.getImage());
+        for (Chapter chapter : chapterRepository.findByStoryIdOrderByChapterNumberAsc(storyId)) {
+            if (chapter.getImageStatus() == ImageStatus.PENDING || chapter.getCreatedAt().isAfter(recent)) {
+                eventStreamService.sendLocal(emitter, "image", mapToChapterResponse(chapter), false);
+            }
+        }
+        return emitter;
+    }
+
+    private long remainingMillis(Instant deadline) {
+        return Math.max(0, Duration.between(Instant.now(), deadline).toMillis());
+    }
+
+    public Story loadInteractiveStory(Long storyId, Long userId) {
+        Story story = storyRepository.findById(storyId)
+                .orElseThrow(() -> new ResourceNotFoundException("Story not found"));
+
+        if (!story.getUser().getId().equals(userId)) {
+            throw new UnauthorizedException("You can only continue your own stories");
+        }
+
+        if (story.getMode() != StoryMode.INTERACTIVE) {
+            throw new IllegalArgumentException("Only interactive stories can have multiple chapters");
+        }
+
+        // Chapters do not use story quota, but long stories are where the tokens go
+        tokenUsageService.checkQuota(userId, familyOf(userId));
+
+        return story;
+    }
+
     public Page<StoryResponseDto> getStoriesByUser(Long userId, Pageable pageable) {
         return storyRepository.findByUserId(userId, pageable)
                 .map(story -> {
@@ -354,14 +528,45 @@ public class StoryService {
         }
 
         storyRepository.delete(story);
+        storyContextService.evict(storyId);
         log.info("Story {} deleted by user {}", storyId, userId);
     }
 
-    private String buildContext(List<Chapter> chapters) {
-        return chapters.stream()
-                .map(ch -> "Chương " + ch.getChapterNumber() + ": " +
-                        ch.getContent().get("text"))
-                .collect(Collectors.joining("\n\n"));
+    /**
+     * Illustrations are attached after a generation returns, so a stored response (e.g. an
+     * idempotent replay) may still show a pending image; this copies the current image state in.
+     */
+    public StoryResponseDto withCurrentImages(StoryResponseDto story) {
+        if (story != null && story.getChapters() != null) {
+            story.getChapters().forEach(this::withCurrentImages);
+        }
+        return story;
+    }
+
+    public ChapterResponseDto withCurrentImages(ChapterResponseDto chapter) {
+        if (chapter != null && chapter.getId() != null) {
+            chapterRepository.findById(chapter.getId()).ifPresent(current -> {
+                chapter.setImageUrl(current.getImageUrl());
+                chapter.setOriginalSketchUrl(current.getOriginalSketchUrl());
+                chapter.setImageStatus(current.getImageStatus().name());
+            });
+        }
+        return chapter;
+    }
+
+    /**
+     * Reads the sketch eagerly so generation can continue after the multipart
+     * request (and its temp file) has gone away.
+     */
+    public byte[] readSketch(MultipartFile sketch) {
+        if (sketch == null || sketch.isEmpty()) {
+            return null;
+        }
+        try {
+            return sketch.getBytes();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read sketch upload", e);
+        }
     }
 
     private StoryResponseDto mapToStoryResponse(Story story, List<Chapter> chapters) {
@@ -385,6 +590,7 @@ public class StoryService {
                 .content(chapter.getContent())
                 .imageUrl(chapter.getImageUrl())
                 .originalSketchUrl(chapter.getOriginalSketchUrl())
+                .imageStatus(chapter.getImageStatus().name())
                 .moodTag(chapter.getMoodTag())
                 .choices(chapter.getChoices())
                 .createdAt(chapter.getCreatedAt())
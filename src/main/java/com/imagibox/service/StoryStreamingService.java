@@ -0,0 +1,206 @@
+package com.imagibox.service;
+
+import com.imagibox.concurrent.GenerationContext;
+import com.imagibox.config.DeadlineProperties;
+import com.imagibox.domain.entity.Story;
+import com.imagibox.domain.entity.User;
+import com.imagibox.domain.enums.GenerationPriority;
+import com.imagibox.dto.ai.ContinuationDraft;
+import com.imagibox.dto.ai.InteractiveChapterDraft;
+import com.imagibox.dto.ai.StoryDraft;
+import com.imagibox.dto.request.GenerateStoryRequest;
+import com.imagibox.dto.request.NextChapterRequest;
+import com.imagibox.dto.response.ChapterResponseDto;
+import com.imagibox.service.ImageService.Illustration;
+import com.imagibox.util.StreamingJsonFieldReader;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Streams story text to the browser as the model produces it and persists
+ * the chapter once the stream completes.
+ *
+ * Events: "title" once the title is known, "chunk" for each piece of story text,
+ * then "story"/"chapter" with the saved result, or "error".
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StoryStreamingService {
+
+    private final StoryService storyService;
+    private final StoryContextService storyContextService;
+    private final RateLimitService rateLimitService;
+    private final AiService aiService;
+    private final ImageService imageService;
+    private final EventStreamService eventStreamService;
+    private final DeadlineProperties deadlineProperties;
+
+    @Qualifier("storyJobExecutor")
+    private final TaskExecutor storyJobExecutor;
+
+    @Value("${imagibox.streaming.emitter-timeout:PT3M}")
+    private Duration emitterTimeout;
+
+    public SseEmitter streamOneShot(GenerateStoryRequest request, byte[] sketch, Long userId) {
+        log.info("Streaming one-shot story for user {}", userId);
+
+        User user = storyService.prepareGeneration(request, userId);
+        Instant imageDeadline = storyService.newImageDeadline();
+        try (GenerationContext.Scope scope = GenerationContext.open(GenerationPriority.ONE_SHOT,
+                storyService.familyOf(userId), userId, Instant.now().plus(deadlineProperties.getOneShot()))) {
+            CompletableFuture<Illustration> illustration = imageService.illustrate(
+                    request.getPrompt(), request.getMood(), sketch, imageDeadline);
+            return stream(
+                    aiService.streamStory(request.getPrompt(), request.getMood()),
+                    StoryDraft::from,
+                    "story",
+                    draft -> storyService.completeOneShot(request, user, draft, illustration, imageDeadline),
+                    () -> {
+                        illustration.cancel(true);
+                        rateLimitService.refundQuota(userId);
+                    });
+        }
+    }
+
+    public SseEmitter streamInteractive(GenerateStoryRequest request, byte[] sketch, Long userId) {
+        log.info("Streaming interactive story for user {}", userId);
+
+        User user = storyService.prepareGeneration(request, userId);
+        Instant imageDeadline = storyService.newImageDeadline();
+        try (GenerationContext.Scope scope = GenerationContext.open(GenerationPriority.INTERACTIVE,
+                storyService.familyOf(userId), userId, Instant.now().plus(deadlineProperties.getInteractive()))) {
+            CompletableFuture<Illustration> illustration = imageService.illustrate(
+                    request.getPrompt(), request.getMood(), sketch, imageDeadline);
+            return stream(
+                    aiService.streamInteractiveFirstChapter(request.getPrompt(), request.getMood()),
+                    InteractiveChapterDraft::from,
+                    "story",
+                    draft -> storyService.completeInteractive(request, user, draft, illustration, imageDeadline),
+                    () -> {
+                        illustration.cancel(true);
+                        rateLimitService.refundQuota(userId);
+                    });
+        }
+    }
+
+    public SseEmitter streamNextChapter(Long storyId, NextChapterRequest request, Long userId) {
+        log.info("Streaming next chapter for story {}", storyId);
+
+        Story story = storyService.loadInteractiveStory(storyId, userId);
+        try (GenerationContext.Scope scope = GenerationContext.open(GenerationPriority.INTERACTIVE,
+                storyService.familyOf(userId), userId, Instant.now().plus(deadlineProperties.getNextChapter()))) {
+            Optional<ChapterResponseDto> speculative = storyService.commitSpeculativeChapter(story, request);
+            if (speculative.isPresent()) {
+                SseEmitter emitter = new SseEmitter(emitterTimeout.toMillis());
+                eventStreamService.sendLocal(emitter, "chapter", speculative.get(), true);
+                return emitter;
+            }
+
+            String context = storyContextService.buildContext(story);
+            return stream(
+                    aiService.streamNextChapter(context, request.getUserChoice()),
+                    ContinuationDraft::from,
+                    "chapter",
+                    draft -> storyService.completeNextChapter(story, request, draft),
+                    () -> { });
+        }
+    }
+
+    /**
+     * The reader sees every token once: it drives the chunk and title events and,
+     * when the stream completes, already holds the fields the draft is built from.
+     *
+     * @param refund gives back whatever the caller reserved or started when the result is never saved:
+     *               the stream failed, was abandoned by the client, or there was no capacity to persist it
+     */
+    private <D> SseEmitter stream(Flux<String> tokens, BiFunction<StreamingJsonFieldReader, CharSequence, D> toDraft,
+            String resultEvent, Function<D, Object> completion, Runnable refund) {
+        SseEmitter emitter = new SseEmitter(emitterTimeout.toMillis());
+        StringBuilder raw = new StringBuilder();
+
+        StreamingJsonFieldReader reader = new StreamingJsonFieldReader(new StreamingJsonFieldReader.Listener() {
+            @Override
+            public void onFieldChunk(String field, String text) {
+                if ("content".equals(field)) {
+                    eventStreamService.sendLocal(emitter, "chunk", Map.of("text", text), false);
+                }
+            }
+
+            @Override
+            public void onFieldComplete(String field, String value) {
+                if ("title".equals(field)) {
+                    eventStreamService.sendLocal(emitter, "title", Map.of("title", value), false);
+                }
+            }
+        });
+
+        // The stream completes on a reactor thread, so bind the caller's GenerationContext now
+        Runnable persist = GenerationContext.wrap(() -> {
+            try {
+                Object result = completion.apply(toDraft.apply(reader, raw));
+                eventStreamService.sendLocal(emitter, resultEvent, result, true);
+            } catch (Exception e) {
+                log.error("Failed to save streamed story", e);
+                sendError(emitter);
+            }
+        });
+
+        // Nothing is saved unless the stream completes, so a failed or abandoned stream gives back its quota
+        AtomicBoolean refunded = new AtomicBoolean();
+        Runnable refundOnce = () -> {
+            if (refunded.compareAndSet(false, true)) {
+                refund.run();
+            }
+        };
+
+        Disposable subscription = tokens.doOnCancel(refundOnce).subscribe(
+                token -> {
+                    raw.append(token);
+                    reader.feed(token);
+                },
+                error -> {
+                    log.error("Story stream failed", error);
+                    sendError(emitter);
+                    refundOnce.run();
+                },
+                // Persisting hits the database, so keep it off the HTTP client's threads
+                () -> {
+                    try {
+                        storyJobExecutor.execute(persist);
+                    } catch (TaskRejectedException e) {
+                        log.error("No capacity to save streamed story, dropping it", e);
+                        sendError(emitter);
+                        refundOnce.run();
+                    }
+                });
+
+        // A client that goes away completes the emitter; stop generating for it and free the bulkhead permit
+        emitter.onCompletion(subscription::dispose);
+        emitter.onTimeout(subscription::dispose);
+        emitter.onError(e -> subscription.dispose());
+        return emitter;
+    }
+
+    private void sendError(SseEmitter emitter) {
+        eventStreamService.sendLocal(emitter, "error",
+                Map.of("message", "Có lỗi xảy ra. Vui lòng thử lại sau!"), true);
+    }
+}
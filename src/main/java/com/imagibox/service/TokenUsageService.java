@@ -0,0 +1,140 @@
+package com.imagibox.service;
+
+import com.imagibox.config.UsageProperties;
+import com.imagibox.dto.response.TokenUsageDto;
+import com.imagibox.exception.QuotaExceededException;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Meters model tokens per user and per family (parent account) in daily Redis
+ * hashes, usage:user:{id}:{date} and usage:family:{id}:{date}, and optionally
+ * enforces a daily quota in tokens or cost units on top of the story quota.
+ * Usage is only known after a call, so a quota stops the next generation, not
+ * the one that crosses it.
+ *
+ * Metrics: imagibox.tokens{type=prompt|completion, template, version}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TokenUsageService {
+
+    private static final String USER_KEY_PREFIX = "usage:user:";
+    private static final String FAMILY_KEY_PREFIX = "usage:family:";
+    private static final String PROMPT_TOKENS = "promptTokens";
+    private static final String COMPLETION_TOKENS = "completionTokens";
+    private static final String CALLS = "calls";
+
+    private final UsageProperties properties;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Records the usage of one model call; user and family may be null for work
+     * that is not tied to an account.
+     */
+    public void record(Long userId, Long familyId, String template, String version, Usage usage) {
+        if (usage == null) {
+            return;
+        }
+        long promptTokens = usage.getPromptTokens() != null ? usage.getPromptTokens() : 0;
+        long completionTokens = usage.getGenerationTokens() != null ? usage.getGenerationTokens() : 0;
+
+        meterRegistry.counter("imagibox.tokens", "type", "prompt", "template", template, "version", version)
+                .increment(promptTokens);
+        meterRegistry.counter("imagibox.tokens", "type", "completion", "template", template, "version", version)
+                .increment(completionTokens);
+
+        // Metering must never fail a generation that has already been paid for
+        try {
+            if (userId != null) {
+                increment(USER_KEY_PREFIX + userId + ":" + LocalDate.now(), promptTokens, completionTokens);
+            }
+            if (familyId != null) {
+                increment(FAMILY_KEY_PREFIX + familyId + ":" + LocalDate.now(), promptTokens, completionTokens);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to record token usage for user {}", userId, e);
+        }
+    }
+
+    public void checkQuota(Long userId, Long familyId) {
+        UsageProperties.Quota quota = properties.getQuota();
+        if (!quota.isEnabled()) {
+            return;
+        }
+
+        LocalDate today = LocalDate.now();
+        if (exceeds(userUsage(userId, today, today), quota.getDailyUserLimit())) {
+            log.warn("User {} exceeded daily token quota", userId);
+            throw new QuotaExceededException("Đã vượt quá lượng token có thể dùng trong ngày!");
+        }
+        if (familyId != null
+                && exceeds(familyUsage(familyId, today, today), quota.getDailyFamilyLimit())) {
+            log.warn("Family {} exceeded daily token quota", familyId);
+            throw new QuotaExceededException("Gia đình đã vượt quá lượng token có thể dùng trong ngày!");
+        }
+    }
+
+    public TokenUsageDto userUsage(Long userId, LocalDate from, LocalDate to) {
+        return usage(USER_KEY_PREFIX + userId + ":", from, to);
+    }
+
+    public TokenUsageDto familyUsage(Long familyId, LocalDate from, LocalDate to) {
+        return usage(FAMILY_KEY_PREFIX + familyId + ":", from, to);
+    }
+
+    private void increment(String key, long promptTokens, long completionTokens) {
+        HashOperations<String, Object, Object> hash = stringRedisTemplate.opsForHash();
+        hash.increment(key, PROMPT_TOKENS, promptTokens);
+        hash.increment(key, COMPLETION_TOKENS, completionTokens);
+        if (hash.increment(key, CALLS, 1) == 1) {
+            stringRedisTemplate.expire(key, properties.getRetention());
+        }
+    }
+
+    private TokenUsageDto usage(String keyPrefix, LocalDate from, LocalDate to) {
+        long promptTokens = 0;
+        long completionTokens = 0;
+        long calls = 0;
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(keyPrefix + day);
+            promptTokens += field(entries, PROMPT_TOKENS);
+            completionTokens += field(entries, COMPLETION_TOKENS);
+            calls += field(entries, CALLS);
+        }
+
+        return TokenUsageDto.builder()
+                .promptTokens(promptTokens)
+                .completionTokens(completionTokens)
+                .totalTokens(promptTokens + completionTokens)
+                .calls(calls)
+                .costUnits(promptTokens / 1000.0 * properties.getPromptCostPer1k()
+                        + completionTokens / 1000.0 * properties.getCompletionCostPer1k())
+                .build();
+    }
+
+    private boolean exceeds(TokenUsageDto usage, long limit) {
+        if (limit <= 0) {
+            return false;
+        }
+        double used = properties.getQuota().getUnit() == UsageProperties.Unit.COST
+                ? usage.getCostUnits()
+                : usage.getTotalTokens();
+        return used >= limit;
+    }
+
+    private long field(Map<Object, Object> entries, String field) {
+        Object value = entries.get(field);
+        return value != null ? Long.parseLong(value.toString()) : 0;
+    }
+}
@@ -0,0 +1,157 @@
+package com.imagibox.util;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Bounded in-memory MinHash index with banded locality-sensitive hashing.
+ * Each entry is a set of shingles summarised as a signature of bands * rows
+ * min-hashes; lookups only compare entries sharing at least one band, and rank
+ * them by estimated Jaccard similarity. The oldest entry is evicted once the
+ * index is full. Thread-safe.
+ */
+public class MinHashIndex<V> {
+
+    public record Match<V>(V value, double similarity) {
+    }
+
+    private record Entry<V>(long[] signature, V value) {
+    }
+
+    private final int bands;
+    private final int rows;
+    private final int capacity;
+    private final long[] seeds;
+
+    private final Map<Long, Entry<V>> entries = new HashMap<>();
+    private final ArrayDeque<Long> insertionOrder = new ArrayDeque<>();
+    private final List<Map<Long, Set<Long>>> buckets;
+    private long nextId;
+
+    public MinHashIndex(int bands, int rows, int capacity, long seed) {
+        this.bands = bands;
+        this.rows = rows;
+        this.capacity = capacity;
+
+        SplittableRandom random = new SplittableRandom(seed);
+        this.seeds = random.longs(bands * rows).toArray();
+        this.buckets = IntStream.range(0, bands)
+                .<Map<Long, Set<Long>>>mapToObj(i -> new HashMap<>())
+                .toList();
+    }
+
+    public synchronized void put(Set<String> shingles, V value) {
+        if (shingles.isEmpty()) {
+            return;
+        }
+
+        long id = nextId++;
+        long[] signature = signature(shingles);
+        entries.put(id, new Entry<>(signature, value));
+        insertionOrder.addLast(id);
+        for (int band = 0; band < bands; band++) {
+            buckets.get(band).computeIfAbsent(bandHash(signature, band), k -> new HashSet<>()).add(id);
+        }
+
+        while (entries.size() > capacity) {
+            evict(insertionOrder.removeFirst());
+        }
+    }
+
+    /**
+     * Best match at or above the threshold among entries accepted by the filter.
+     */
+    public synchronized Optional<Match<V>> findMostSimilar(Set<String> shingles, double threshold,
+            Predicate<V> filter) {
+        if (shingles.isEmpty()) {
+            return Optional.empty();
+        }
+
+        long[] signature = signature(shingles);
+        Set<Long> candidates = new HashSet<>();
+        for (int band = 0; band < bands; band++) {
+            Set<Long> bucket = buckets.get(band).get(bandHash(signature, band));
+            if (bucket != null) {
+                candidates.addAll(bucket);
+            }
+        }
+
+        Match<V> best = null;
+        for (Long id : candidates) {
+            Entry<V> entry = entries.get(id);
+            if (!filter.test(entry.value())) {
+                continue;
+            }
+            double similarity = similarity(signature, entry.signature());
+            if (similarity >= threshold && (best == null || similarity > best.similarity())) {
+                best = new Match<>(entry.value(), similarity);
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void evict(long id) {
+        Entry<V> entry = entries.remove(id);
+        for (int band = 0; band < bands; band++) {
+            long hash = bandHash(entry.signature(), band);
+            Set<Long> bucket = buckets.get(band).get(hash);
+            bucket.remove(id);
+            if (bucket.isEmpty()) {
+                buckets.get(band).remove(hash);
+            }
+        }
+    }
+
+    private long[] signature(Set<String> shingles) {
+        long[] signature = new long[seeds.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (String shingle : shingles) {
+            long base = shingle.hashCode();
+            for (int i = 0; i < seeds.length; i++) {
+                long hash = mix(base ^ seeds[i]);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private long bandHash(long[] signature, int band) {
+        long hash = band;
+        for (int row = band * rows; row < (band + 1) * rows; row++) {
+            hash = mix(hash * 31 + signature[row]);
+        }
+        return hash;
+    }
+
+    private double similarity(long[] a, long[] b) {
+        int equal = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / a.length;
+    }
+
+    // SplitMix64 finaliser
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,233 @@
+package com.imagibox.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Incremental reader for the flat JSON objects our story prompts ask for.
+ * Text can be fed in arbitrary chunks (e.g. tokens from a streaming model call);
+ * string values are reported as they are decoded, so callers can show the story
+ * before the closing brace arrives. Anything before the first '{' (code fences,
+ * chatter) and after the matching '}' is ignored.
+ */
+public class StreamingJsonFieldReader {
+
+    public interface Listener {
+        default void onFieldChunk(String field, String text) {
+        }
+
+        default void onFieldComplete(String field, String value) {
+        }
+    }
+
+    private enum State {
+        BEFORE_OBJECT, EXPECT_KEY, IN_KEY, AFTER_KEY, EXPECT_VALUE, IN_STRING, IN_OTHER, DONE
+    }
+
+    private final Listener listener;
+    private final Map<String, String> fields = new LinkedHashMap<>();
+
+    private State state = State.BEFORE_OBJECT;
+    private final StringBuilder key = new StringBuilder();
+    private final StringBuilder value = new StringBuilder();
+    private final StringBuilder pending = new StringBuilder();
+    private String currentField;
+
+    private boolean escape;
+    private int unicodeDigits = -1;
+    private int unicodeValue;
+
+    private int otherDepth;
+    private boolean otherInString;
+    private boolean otherEscape;
+
+    public StreamingJsonFieldReader() {
+        this(new Listener() {
+        });
+    }
+
+    public StreamingJsonFieldReader(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Reads a complete response in one pass.
+     */
+    public static StreamingJsonFieldReader read(CharSequence response) {
+        StreamingJsonFieldReader reader = new StreamingJsonFieldReader();
+        reader.feed(response);
+        return reader;
+    }
+
+    public void feed(CharSequence chunk) {
+        for (int i = 0; i < chunk.length() && state != State.DONE; i++) {
+            accept(chunk.charAt(i));
+        }
+        flushPending(false);
+    }
+
+    public boolean isComplete() {
+        return state == State.DONE;
+    }
+
+    /**
+     * Whether an opening '{' has been seen, i.e. the response is JSON at all.
+     */
+    public boolean hasObject() {
+        return state != State.BEFORE_OBJECT;
+    }
+
+    public String get(String field) {
+        return fields.get(field);
+    }
+
+    public Map<String, String> fields() {
+        return fields;
+    }
+
+    private void accept(char c) {
+        switch (state) {
+            case BEFORE_OBJECT -> {
+                if (c == '{') {
+                    state = State.EXPECT_KEY;
+                }
+            }
+            case EXPECT_KEY -> {
+                if (c == '"') {
+                    key.setLength(0);
+                    state = State.IN_KEY;
+                } else if (c == '}') {
+                    state = State.DONE;
+                }
+            }
+            case IN_KEY -> {
+                if (escape) {
+                    key.append(c);
+                    escape = false;
+                } else if (c == '\\') {
+                    escape = true;
+                } else if (c == '"') {
+                    currentField = key.toString();
+                    state = State.AFTER_KEY;
+                } else {
+                    key.append(c);
+                }
+            }
+            case AFTER_KEY -> {
+                if (c == ':') {
+                    state = State.EXPECT_VALUE;
+                }
+            }
+            case EXPECT_VALUE -> {
+                if (c == '"') {
+                    value.setLength(0);
+                    state = State.IN_STRING;
+                } else if (!Character.isWhitespace(c)) {
+                    otherDepth = 0;
+                    otherInString = false;
+                    otherEscape = false;
+                    state = State.IN_OTHER;
+                    acceptOther(c);
+                }
+            }
+            case IN_STRING -> acceptString(c);
+            case IN_OTHER -> acceptOther(c);
+            case DONE -> {
+            }
+        }
+    }
+
+    private void acceptString(char c) {
+        if (unicodeDigits >= 0) {
+            unicodeValue = (unicodeValue << 4) + Character.digit(c, 16);
+            if (++unicodeDigits == 4) {
+                append((char) unicodeValue);
+                unicodeDigits = -1;
+            }
+            return;
+        }
+
+        if (escape) {
+            escape = false;
+            switch (c) {
+                case 'n' -> append('\n');
+                case 't' -> append('\t');
+                case 'r' -> append('\r');
+                case 'b' -> append('\b');
+                case 'f' -> append('\f');
+                case 'u' -> {
+                    unicodeDigits = 0;
+                    unicodeValue = 0;
+                }
+                default -> append(c);
+            }
+            return;
+        }
+
+        if (c == '\\') {
+            escape = true;
+        } else if (c == '"') {
+            flushPending(true);
+            String completed = value.toString();
+            fields.put(currentField, completed);
+            listener.onFieldComplete(currentField, completed);
+            state = State.EXPECT_KEY;
+        } else {
+            append(c);
+        }
+    }
+
+    private void acceptOther(char c) {
+        if (otherInString) {
+            if (otherEscape) {
+                otherEscape = false;
+            } else if (c == '\\') {
+                otherEscape = true;
+            } else if (c == '"') {
+                otherInString = false;
+            }
+            return;
+        }
+
+        switch (c) {
+            case '"' -> otherInString = true;
+            case '{', '[' -> otherDepth++;
+            case ']' -> otherDepth--;
+            case '}' -> {
+                if (otherDepth == 0) {
+                    state = State.DONE;
+                } else {
+                    otherDepth--;
+                }
+            }
+            case ',' -> {
+                if (otherDepth == 0) {
+                    state = State.EXPECT_KEY;
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void append(char c) {
+        value.append(c);
+        pending.append(c);
+    }
+
+    private void flushPending(boolean endOfValue) {
+        if (state != State.IN_STRING && !endOfValue || pending.isEmpty()) {
+            return;
+        }
+
+        // Hold back a dangling high surrogate so listeners never see half a character
+        int length = pending.length();
+        if (!endOfValue && Character.isHighSurrogate(pending.charAt(length - 1))) {
+            length--;
+        }
+        if (length > 0) {
+            listener.onFieldChunk(currentField, pending.substring(0, length));
+            pending.delete(0, length);
+        }
+    }
+}
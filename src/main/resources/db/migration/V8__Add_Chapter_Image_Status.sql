@@ -0,0 +1,9 @@
+-- Track illustration progress per chapter so text can be returned before the image is ready
+ALTER TABLE chapters
+    ADD COLUMN image_status VARCHAR(20) NOT NULL DEFAULT 'READY';
+
+-- Chapters saved without an image before this migration were image failures
+UPDATE chapters SET image_status = 'FAILED' WHERE image_url IS NULL;
+
+ALTER TABLE chapters
+    ADD CONSTRAINT chk_chapter_image_status CHECK (image_status IN ('PENDING', 'READY', 'FAILED'));
@@ -0,0 +1,79 @@
+package com.imagibox.concurrent;
+
+import com.imagibox.config.BulkheadProperties;
+import com.imagibox.config.RetryProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A retried stream resubscribes from Reactor's timer (parallel) threads. When the
+ * bulkhead is full at that point, waiting for a permit must not block those threads.
+ */
+class BudgetedRetryStreamTest {
+
+    private static final Duration PARALLEL_TASK_WAIT = Duration.ofMillis(500);
+
+    @Test
+    void retryWaitsForAFullBulkheadWithoutBlockingParallelThreads() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        BulkheadProperties.Limits limits = new BulkheadProperties.Limits();
+        limits.setInitialLimit(1);
+        limits.setMinLimit(1);
+        limits.setMaxLimit(1);
+        limits.setMaxWait(Duration.ofSeconds(5));
+        AdaptiveBulkhead bulkhead = new AdaptiveBulkhead("test", limits, meterRegistry);
+
+        RetryProperties retryProperties = new RetryProperties();
+        retryProperties.setInitialBackoff(Duration.ofMillis(20));
+        retryProperties.setMaxBackoff(Duration.ofMillis(20));
+        retryProperties.setBudgetRatio(1);
+
+        // The first attempt fails; by the time the retry decides to go again its permit is back,
+        // and another caller takes it, so the resubscribe finds the bulkhead full
+        AtomicReference<Disposable> otherCaller = new AtomicReference<>();
+        BudgetedRetry retry = new BudgetedRetry("test", retryProperties, error -> {
+            otherCaller.compareAndSet(null, bulkhead.stream(Flux::never).subscribe());
+            return error instanceof IllegalStateException;
+        }, meterRegistry);
+
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<List<String>> result = retry.stream(bulkhead.stream(() -> Flux.defer(() ->
+                        attempts.incrementAndGet() == 1
+                                ? Flux.<String>error(new IllegalStateException("transient"))
+                                : Flux.just("ok"))))
+                .collectList()
+                .toFuture();
+
+        Thread.sleep(200);
+        assertThat(otherCaller.get()).isNotNull();
+        assertThat(bulkhead.getInFlight()).isEqualTo(1);
+        assertThat(result).isNotDone();
+
+        // Every parallel worker must still pick up work while the retry waits
+        int tasks = Schedulers.DEFAULT_POOL_SIZE * 4;
+        CountDownLatch ran = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; i++) {
+            Schedulers.parallel().schedule(ran::countDown);
+        }
+        assertThat(ran.await(PARALLEL_TASK_WAIT.toMillis(), TimeUnit.MILLISECONDS)).isTrue();
+
+        otherCaller.get().dispose();
+        assertThat(result.get(2, TimeUnit.SECONDS)).containsExactly("ok");
+        assertThat(attempts).hasValue(2);
+        assertThat(bulkhead.getInFlight()).isZero();
+    }
+}
@@ -0,0 +1,75 @@
+package com.imagibox.concurrent;
+
+import com.imagibox.config.BulkheadProperties;
+import com.imagibox.config.HedgingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Each hedged attempt takes its own bulkhead permit. The losing attempt is
+ * interrupted when the other wins; that says nothing about the provider, so the
+ * bulkhead limit must not shrink for it.
+ */
+class HedgedBulkheadTest {
+
+    private static final int LIMIT = 4;
+
+    private final ExecutorService attempts = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        attempts.shutdownNow();
+    }
+
+    @Test
+    void interruptedLoserDoesNotShrinkTheLimit() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        BulkheadProperties.Limits limits = new BulkheadProperties.Limits();
+        limits.setInitialLimit(LIMIT);
+        limits.setMaxLimit(LIMIT);
+        limits.setBackoffRatio(0.5);
+        AdaptiveBulkhead bulkhead = new AdaptiveBulkhead("test", limits, meterRegistry);
+
+        HedgingProperties hedging = new HedgingProperties();
+        hedging.setEnabled(true);
+        hedging.setInitialDelay(Duration.ofMillis(50));
+        hedging.setMinDelay(Duration.ofMillis(50));
+        hedging.setBudgetRatio(1);
+        HedgedExecutor executor = new HedgedExecutor("test", hedging, attempts, meterRegistry);
+
+        // The primary hangs until it is interrupted; the hedge answers at once
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch loserInterrupted = new CountDownLatch(1);
+        String result = executor.execute(() -> bulkhead.execute(() -> {
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } finally {
+                    loserInterrupted.countDown();
+                }
+            }
+            return "hedge";
+        }));
+
+        assertThat(result).isEqualTo("hedge");
+        assertThat(loserInterrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (bulkhead.getInFlight() > 0 && System.nanoTime() < until) {
+            Thread.sleep(10);
+        }
+
+        assertThat(bulkhead.getInFlight()).isZero();
+        assertThat(bulkhead.getLimit()).isEqualTo(LIMIT);
+    }
+}
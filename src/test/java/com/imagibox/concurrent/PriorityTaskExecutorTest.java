@@ -0,0 +1,53 @@
+package com.imagibox.concurrent;
+
+import com.imagibox.domain.enums.GenerationPriority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * A family may hold at most maxShare of the queue while other families wait, and
+ * all of it while nobody else does. Workers never run anything here, so the one
+ * dispatched task keeps the executor busy and every later task queues.
+ */
+class PriorityTaskExecutorTest {
+
+    private static final int QUEUE_CAPACITY = 4;
+
+    private final PriorityTaskExecutor executor = new PriorityTaskExecutor("test", task -> {
+    }, 1, QUEUE_CAPACITY, Map.of(), Duration.ofSeconds(1), 0.5, new SimpleMeterRegistry());
+
+    @Test
+    void familyAloneMayFillTheWholeQueue() {
+        submit(1L);
+        for (int i = 0; i < QUEUE_CAPACITY; i++) {
+            assertThatCode(() -> submit(1L)).doesNotThrowAnyException();
+        }
+
+        assertThatThrownBy(() -> submit(1L)).isInstanceOf(TaskRejectedException.class);
+    }
+
+    @Test
+    void familyShareAppliesOnceAnotherFamilyIsWaiting() {
+        submit(1L);
+        submit(2L);
+        submit(1L);
+        submit(1L);
+
+        assertThatThrownBy(() -> submit(1L)).isInstanceOf(TaskRejectedException.class);
+        assertThatCode(() -> submit(2L)).doesNotThrowAnyException();
+    }
+
+    private void submit(long family) {
+        try (GenerationContext.Scope scope = GenerationContext.open(GenerationPriority.ONE_SHOT, family)) {
+            executor.execute(() -> {
+            });
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.imagibox.config;
+
+import com.imagibox.concurrent.GenerationContext;
+import com.imagibox.domain.enums.GenerationPriority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.core.task.TaskExecutor;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Concurrent generations per node with the platform pool and with virtual threads.
+ * Every generation is one stage blocked on a slow provider for {@link #PROVIDER_LATENCY},
+ * submitted from its own family so fair sharing does not hold any of them back.
+ *
+ * The build targets Java 17, where only the refusal test runs; the comparison needs
+ * a Java 21 runtime, which the CI matrix provides.
+ */
+class AsyncConfigLoadTest {
+
+    private static final int GENERATIONS = 100;
+    private static final Duration PROVIDER_LATENCY = Duration.ofMillis(200);
+
+    private static final int MAX_POOL_SIZE = 10;
+    private static final int VIRTUAL_CONCURRENCY = 200;
+
+    record LoadResult(Duration elapsed, int peakConcurrency) {
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void virtualThreadsRunMoreGenerationsAtOnce() throws InterruptedException {
+        LoadResult platform = run(new AsyncConfig(false));
+        LoadResult virtual = run(new AsyncConfig(true));
+
+        assertThat(platform.peakConcurrency()).as("platform peak concurrency").isLessThanOrEqualTo(MAX_POOL_SIZE);
+        assertThat(virtual.peakConcurrency()).as("virtual peak concurrency").isGreaterThan(MAX_POOL_SIZE);
+        assertThat(virtual.elapsed().multipliedBy(4))
+                .as("4x virtual elapsed (%d ms) vs platform elapsed (%d ms)",
+                        virtual.elapsed().toMillis(), platform.elapsed().toMillis())
+                .isLessThan(platform.elapsed());
+    }
+
+    @Test
+    @EnabledForJreRange(max = JRE.JAVA_20)
+    void virtualThreadsAreRefusedBeforeJava21() {
+        assertThatThrownBy(() -> new AsyncConfig(true))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Java 21");
+    }
+
+    private LoadResult run(AsyncConfig config) throws InterruptedException {
+        TaskExecutor executor = config.taskExecutor(MAX_POOL_SIZE, GENERATIONS, VIRTUAL_CONCURRENCY,
+                Duration.ZERO, Duration.ofSeconds(5), Duration.ofSeconds(30), Duration.ofSeconds(1), 0.5,
+                new SimpleMeterRegistry());
+
+        CountDownLatch done = new CountDownLatch(GENERATIONS);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+
+        long start = System.nanoTime();
+        for (long family = 0; family < GENERATIONS; family++) {
+            try (GenerationContext.Scope scope = GenerationContext.open(GenerationPriority.ONE_SHOT, family)) {
+                executor.execute(() -> {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(PROVIDER_LATENCY.toMillis());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        running.decrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+        }
+
+        assertThat(done.await(1, TimeUnit.MINUTES)).isTrue();
+        return new LoadResult(Duration.ofNanos(System.nanoTime() - start), peak.get());
+    }
+}
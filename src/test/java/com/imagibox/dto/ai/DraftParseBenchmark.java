@@ -0,0 +1,92 @@
+package com.imagibox.dto.ai;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-pass parsing of model output into drafts, against the path it replaced:
+ * two regex replaceAll passes to strip the code fences, then ObjectMapper into a
+ * Map, then picking the fields out of the map.
+ *
+ * Responses are fenced JSON as Gemini returns them; paragraphs sets the story length.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DraftParseBenchmark {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String PARAGRAPH = "Ngày xửa ngày xưa, ở một khu rừng xanh mát, có một chú thỏ trắng "
+            + "tên là Bông. Bông rất thích nhảy nhót và hái những bông hoa \\\"đẹp nhất\\\" tặng mẹ. "
+            + "Một hôm, Bông đi lạc và gặp bác Gấu nâu tốt bụng.\\n\\n";
+
+    @Param({"4", "16"})
+    private int paragraphs;
+
+    private String storyResponse;
+    private String continuationResponse;
+
+    @Setup
+    public void responses() {
+        String content = PARAGRAPH.repeat(paragraphs);
+        storyResponse = "```json\n{\n  \"title\": \"Chú thỏ Bông đi lạc\",\n  \"content\": \"" + content
+                + "\",\n  \"moral\": \"Luôn đi cùng người lớn khi vào rừng.\"\n}\n```";
+        continuationResponse = "```json\n{\n  \"content\": \"" + content
+                + "\",\n  \"choiceA\": \"Bông đi theo bác Gấu\",\n  \"choiceB\": \"Bông tự tìm đường về\","
+                + "\n  \"scene\": \"A small white rabbit meets a kind brown bear in a green forest\"\n}\n```";
+    }
+
+    @Benchmark
+    public StoryDraft storySinglePass() {
+        return StoryDraft.parse(storyResponse);
+    }
+
+    @Benchmark
+    public StoryDraft storyTwoPass() throws Exception {
+        String raw = stripFences(storyResponse);
+        Map<String, String> parsed = OBJECT_MAPPER.readValue(raw, new TypeReference<>() {
+        });
+        return new StoryDraft(parsed.getOrDefault("title", "Câu chuyện của bé"),
+                parsed.getOrDefault("content", raw), parsed.getOrDefault("moral", ""));
+    }
+
+    @Benchmark
+    public ContinuationDraft continuationSinglePass() {
+        return ContinuationDraft.parse(continuationResponse);
+    }
+
+    @Benchmark
+    public ContinuationDraft continuationTwoPass() throws Exception {
+        String raw = stripFences(continuationResponse);
+        Map<String, String> parsed = OBJECT_MAPPER.readValue(raw, new TypeReference<>() {
+        });
+        return new ContinuationDraft(parsed.getOrDefault("content", raw), parsed.get("choiceA"),
+                parsed.get("choiceB"), parsed.get("scene"));
+    }
+
+    // The former AiService.parseJsonResponse
+    private static String stripFences(String response) {
+        return response.trim()
+                .replaceAll("```json\\s*", "")
+                .replaceAll("```\\s*", "")
+                .trim();
+    }
+}
@@ -0,0 +1,103 @@
+package com.imagibox.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup latency of SimilarPromptService with 1M prompts indexed.
+ *
+ * Prompts are built from subject x action x place x time phrases, so indexed
+ * prompts share a lot of structure, as real ones do. Near-duplicate queries swap
+ * the subject's classifier ("con" for "chú"); misses use a subject that is never indexed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms6g", "-Xmx6g"})
+public class SimilarPromptBenchmark {
+
+    private static final int PROMPTS = 1_000_000;
+    private static final String MOOD = "Vui vẻ";
+
+    private static final List<String> SUBJECTS = List.of(
+            "mèo", "chó", "thỏ trắng", "gấu nâu", "voi con", "khỉ", "hươu cao cổ", "sư tử", "hổ", "cá heo",
+            "rùa", "ếch xanh", "vịt vàng", "gà trống", "chim sẻ", "cú mèo", "sóc nhỏ", "nhím", "cáo", "sói",
+            "ngựa", "bò sữa", "lợn hồng", "dê", "cừu", "chuột", "ong", "bướm", "kiến", "khủng long",
+            "rồng", "kỳ lân", "công chúa", "hoàng tử", "phù thủy", "robot", "phi hành gia", "cướp biển",
+            "siêu nhân", "nàng tiên", "bé na", "bé bin", "ông già noel", "người tuyết", "chim cánh cụt",
+            "gấu trúc", "hà mã", "tê giác", "cá sấu", "bạch tuộc");
+    private static final List<String> ACTIONS = List.of(
+            "đi học", "đi chơi", "đi lạc", "tìm bạn mới", "học bơi", "học vẽ", "nấu ăn", "trồng cây",
+            "xây nhà", "đi câu cá", "thả diều", "đá bóng", "hát karaoke", "đi cắm trại", "tìm kho báu",
+            "giúp đỡ bạn bè", "dọn dẹp nhà cửa", "đi siêu thị", "làm bánh", "đọc sách", "đi ngủ sớm",
+            "đánh răng", "tập thể dục", "đi sở thú", "bay lên trời", "lặn xuống biển", "leo núi",
+            "đi xe đạp", "chơi trốn tìm", "sinh nhật", "đi du lịch", "học đàn", "nhảy múa", "kể chuyện",
+            "chăm sóc em bé", "tưới hoa", "bắt bướm", "ngắm sao", "đi tàu hỏa", "làm thí nghiệm");
+    private static final List<String> PLACES = List.of(
+            "trong rừng", "ở trường", "trên biển", "trong thành phố", "ở nông trại", "trên núi",
+            "dưới đại dương", "trong công viên", "ở vườn hoa", "trên mặt trăng", "ở sa mạc", "bên bờ sông",
+            "trong lâu đài", "ở làng quê", "trên đảo hoang", "trong hang động", "ở bắc cực", "trên mây",
+            "ở chợ", "trong bệnh viện", "ở thư viện", "trên sân bóng", "ở bể bơi", "trong vũ trụ",
+            "ở nhà bà");
+    private static final List<String> TIMES = List.of(
+            "vào buổi sáng", "vào buổi tối", "ngày mưa", "ngày nắng", "mùa đông", "mùa hè", "dịp tết",
+            "đêm trung thu", "ngày đầu tiên", "cuối tuần", "lúc nửa đêm", "sau giờ học", "ngày lễ",
+            "mùa xuân", "mùa thu", "trong kỳ nghỉ", "ngày sinh nhật", "sáng chủ nhật", "buổi chiều",
+            "hôm nay");
+
+    private SimilarPromptService service;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void index() {
+        service = new SimilarPromptService(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "reuseIllustrations", false);
+        ReflectionTestUtils.setField(service, "threshold", 0.7);
+        ReflectionTestUtils.setField(service, "capacity", PROMPTS);
+
+        for (int i = 0; i < PROMPTS; i++) {
+            service.record(SimilarPromptService.IMAGE_PROMPT, prompt("con", i), MOOD, "image prompt " + i);
+        }
+        random = new SplittableRandom(42);
+    }
+
+    @Benchmark
+    public Optional<String> nearDuplicate() {
+        return service.find(SimilarPromptService.IMAGE_PROMPT, prompt("chú", random.nextInt(PROMPTS)), MOOD);
+    }
+
+    @Benchmark
+    public Optional<String> miss() {
+        int i = random.nextInt(PROMPTS);
+        return service.find(SimilarPromptService.IMAGE_PROMPT,
+                "chú bọ rùa " + ACTIONS.get(i % ACTIONS.size()) + " " + PLACES.get(i % PLACES.size()), MOOD);
+    }
+
+    private static String prompt(String classifier, int i) {
+        int subject = i % SUBJECTS.size();
+        int action = (i / SUBJECTS.size()) % ACTIONS.size();
+        int place = (i / (SUBJECTS.size() * ACTIONS.size())) % PLACES.size();
+        int time = i / (SUBJECTS.size() * ACTIONS.size() * PLACES.size());
+        return classifier + " " + SUBJECTS.get(subject) + " " + ACTIONS.get(action) + " "
+                + PLACES.get(place) + " " + TIMES.get(time);
+    }
+}
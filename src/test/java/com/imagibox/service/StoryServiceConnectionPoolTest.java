@@ -0,0 +1,141 @@
+package com.imagibox.service;
+
+import com.imagibox.config.DeadlineProperties;
+import com.imagibox.domain.entity.User;
+import com.imagibox.domain.enums.UserRole;
+import com.imagibox.dto.ai.StoryDraft;
+import com.imagibox.dto.request.GenerateStoryRequest;
+import com.imagibox.dto.response.StoryResponseDto;
+import com.imagibox.repository.StoryRepository;
+import com.imagibox.repository.UserRepository;
+import com.imagibox.service.ImageService.Illustration;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+/**
+ * Generation waits on slow providers; no database connection may be checked out
+ * while it does, or a handful of slow generations starve the pool.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({StoryService.class, StoryPersistenceService.class, DeadlineProperties.class,
+        StoryServiceConnectionPoolTest.Executors.class})
+class StoryServiceConnectionPoolTest {
+
+    private static final Duration TEXT_LATENCY = Duration.ofSeconds(1);
+    private static final Duration IMAGE_LATENCY = Duration.ofMillis(300);
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @TestConfiguration
+    static class Executors {
+        @Bean
+        Executor taskExecutor() {
+            return new SimpleAsyncTaskExecutor("test-async-");
+        }
+    }
+
+    @Autowired
+    private StoryService storyService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private StoryRepository storyRepository;
+
+    @Autowired
+    private HikariDataSource dataSource;
+
+    @MockBean
+    private AiService aiService;
+
+    @MockBean
+    private ImageService imageService;
+
+    @MockBean
+    private StoryContextService storyContextService;
+
+    @MockBean
+    private EventStreamService eventStreamService;
+
+    @MockBean
+    private SpeculativeChapterService speculativeChapterService;
+
+    @MockBean
+    private ContentSafetyService contentSafetyService;
+
+    @MockBean
+    private RateLimitService rateLimitService;
+
+    @MockBean
+    private TokenUsageService tokenUsageService;
+
+    @Test
+    void slowProvidersDoNotHoldDatabaseConnections() {
+        User user = userRepository.save(User.builder()
+                .username("parent-" + System.nanoTime())
+                .passwordHash("x")
+                .role(UserRole.PARENT)
+                .build());
+
+        AtomicInteger maxActive = new AtomicInteger(-1);
+        given(aiService.generateStory(any(), any())).willAnswer(invocation -> {
+            sampleActiveConnections(TEXT_LATENCY, maxActive);
+            return new StoryDraft("Mèo đi học", "Ngày xửa ngày xưa...", "Chăm chỉ");
+        });
+        given(imageService.illustrate(any(), any(), any(), any())).willAnswer(invocation ->
+                CompletableFuture.supplyAsync(() -> {
+                    sampleActiveConnections(IMAGE_LATENCY, maxActive);
+                    return new Illustration("https://images.example/cat.png", null);
+                }));
+
+        StoryResponseDto story = storyService.generateOneShot(
+                GenerateStoryRequest.builder().prompt("con mèo đi học").mood("Vui vẻ").mode("ONE_SHOT").build(),
+                (byte[]) null,
+                user.getId());
+
+        assertThat(maxActive.get()).as("connections checked out during provider calls").isZero();
+        assertThat(storyRepository.findById(story.getId())).isPresent();
+    }
+
+    private void sampleActiveConnections(Duration latency, AtomicInteger maxActive) {
+        long end = System.nanoTime() + latency.toNanos();
+        while (System.nanoTime() < end) {
+            maxActive.accumulateAndGet(dataSource.getHikariPoolMXBean().getActiveConnections(), Math::max);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}